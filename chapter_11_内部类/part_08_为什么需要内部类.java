@@ -267,6 +267,8 @@ abstract class Event {
 }
 /**
  * 一个用来管理并触发事件的实际控制框架
+ * NOTE：run() 会一直空转占满一个 CPU 核，并且 remove() 是 O(n) 的，
+ * 用分层时间轮调度（并且原生支持周期事件）的版本见 part_12_时间轮调度 中的 WheelController
  */
 class Controller {
     private List<Event> eventList = new ArrayList<>();
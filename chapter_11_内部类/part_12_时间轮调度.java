@@ -0,0 +1,409 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+【时间轮调度】
+part_08 中的 Controller.run() 有几个问题：
+1. 只要 eventList 不为空就一直循环，每一轮都复制整个 ArrayList，并对每个 Event 调用 ready()（即 Instant.now()），
+   即使最近的事件还要等几秒，也会占满一个 CPU 核；
+2. eventList.remove(e) 是 O(n) 的，n 个事件全部触发一遍是 O(n^2)，几万个事件就已经很慢了；
+3. 周期性的事件只能靠 Restart 在 action() 中重新 start()、再 addEvent() 一遍。
+
+分层时间轮（hierarchical timing wheel）：
+1. 时间被划分为刻度（tick，默认 1 毫秒），共 10 层，每层 64 个槽，第 L 层的一个槽覆盖 64^L 个刻度；
+2. 定时任务按“到期刻度与当前刻度最高的不同位”放入某一层的某个槽（槽是双向链表），插入是 O(1) 的；
+3. 当前刻度的低 6L 位全为 0 时，第 L 层的当前槽“降级”：其中的任务按新的当前刻度重新放入更低的层，
+   到了第 0 层的任务就在对应的刻度到期；
+4. 每层用一个 long 记录哪些槽非空，所以可以直接算出下一个需要处理的刻度，
+   中间的空刻度全部跳过，线程用 LockSupport.parkNanos() 一直睡到那个刻度；
+5. 周期性的任务到期时直接按周期重新放回时间轮，不再需要 Restart。
+
+WheelController 继承自 Controller，addEvent() 可以在任意线程（包括 Event.action() 中）调用：
+新的任务先放进一个无锁队列，再唤醒 run() 所在的线程，由它放进时间轮，时间轮本身只被这一个线程访问。
+ */
+
+/**
+ * 分层时间轮，非线程安全
+ */
+class TimingWheel<T> {
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 10;
+    static final long MAX_TICK = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    static final class Timeout<T> {
+        final T task;
+        final long period;
+        long deadline;
+        Timeout<T> prev, next;
+        private volatile boolean cancelled;
+
+        /**
+         * @param deadline 到期的刻度
+         * @param period   周期（刻度数），0 表示只执行一次
+         */
+        Timeout(T task, long deadline, long period) {
+            if (deadline < 0 || period < 0) {
+                throw new IllegalArgumentException("deadline: " + deadline + ", period: " + period);
+            }
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /* 可以在任意线程调用，任务在下一次到期时被丢弃 */
+        public void cancel() {
+            cancelled = true;
+        }
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final Timeout<T>[][] slots = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private long tick;
+    private int size;
+
+    long tick() {
+        return tick;
+    }
+
+    /* 包括已经取消、但还没有到期的任务 */
+    int size() {
+        return size;
+    }
+
+    Timeout<T> add(T task, long deadline, long period) {
+        return add(new Timeout<>(task, deadline, period));
+    }
+
+    /* 已经过期的任务在下一个刻度到期 */
+    Timeout<T> add(Timeout<T> timeout) {
+        timeout.deadline = Math.min(Math.max(timeout.deadline, tick + 1), MAX_TICK);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * 下一个需要处理（到期或降级）的刻度，时间轮为空时返回 Long.MAX_VALUE。
+     * 第 L 层中所有非空槽的下标都大于当前刻度在这一层的下标，所以最低的非空层中最小的非空槽就是答案。
+     */
+    long nextTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] != 0) {
+                int shift = level * SLOT_BITS;
+                long base = tick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+                return base | (long) Long.numberOfTrailingZeros(occupied[level]) << shift;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 把当前刻度推进到 now，依次执行这期间到期的任务，返回执行的个数
+     */
+    int advance(long now, Consumer<? super T> action) {
+        int fired = 0;
+        for (long next; (next = nextTick()) <= now; ) {
+            tick = next;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((next & ((1L << shift) - 1)) == 0) {
+                    cascade(level, (int) (next >>> shift) & (SLOTS - 1));
+                }
+            }
+            int slot = (int) next & (SLOTS - 1);
+            for (Timeout<T> t; (t = slots[0][slot]) != null; ) {
+                unlink(t, 0, slot);
+                if (t.isCancelled()) {
+                    size--;
+                    continue;
+                }
+                if (t.period > 0) {
+                    /* 先放回时间轮再执行，action() 抛出异常也不会丢失周期任务 */
+                    t.deadline = Math.min(next + t.period, MAX_TICK);
+                    place(t);
+                } else {
+                    size--;
+                }
+                fired++;
+                action.accept(t.task);
+            }
+        }
+        if (now > tick) {
+            tick = now;
+        }
+        return fired;
+    }
+
+    private void cascade(int level, int slot) {
+        for (Timeout<T> t; (t = slots[level][slot]) != null; ) {
+            unlink(t, level, slot);
+            place(t);
+        }
+    }
+
+    private void place(Timeout<T> t) {
+        /* 到期刻度与当前刻度最高的不同位决定层数，| 1 让 deadline == tick 时落在第 0 层 */
+        int level = (63 - Long.numberOfLeadingZeros((t.deadline ^ tick) | 1)) / SLOT_BITS;
+        int slot = (int) (t.deadline >>> (level * SLOT_BITS)) & (SLOTS - 1);
+        Timeout<T> head = slots[level][slot];
+        t.prev = null;
+        t.next = head;
+        if (head != null) {
+            head.prev = t;
+        }
+        slots[level][slot] = t;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timeout<T> t, int level, int slot) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            slots[level][slot] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = t.next = null;
+        if (slots[level][slot] == null) {
+            occupied[level] &= ~(1L << slot);
+        }
+    }
+}
+
+/**
+ * 用时间轮管理事件的控制框架：
+ * 与 Controller 一样，run() 在没有待执行的事件时返回；
+ * 不同的是，事件的延迟从 addEvent() 时开始计算，而不是从 Event 创建（或 start()）时开始计算。
+ */
+class WheelController extends Controller {
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    private final TimingWheel<Event> wheel = new TimingWheel<>();
+    private final Queue<TimingWheel.Timeout<Event>> inbox = new ConcurrentLinkedQueue<>();
+    private volatile Thread runner;
+
+    WheelController() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+    WheelController(long tick, TimeUnit unit) {
+        tickNanos = unit.toNanos(tick);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick: " + tick + " " + unit);
+        }
+    }
+
+    @Override
+    public void addEvent(Event c) {
+        schedule(c, c.delayTime.toNanos(), 0);
+    }
+
+    /**
+     * 先延迟 c.delayTime，之后每隔 periodMillis 执行一次，直到返回值被 cancel()
+     */
+    public TimingWheel.Timeout<Event> addRecurring(Event c, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("periodMillis: " + periodMillis);
+        }
+        return schedule(c, c.delayTime.toNanos(), TimeUnit.MILLISECONDS.toNanos(periodMillis));
+    }
+
+    public TimingWheel.Timeout<Event> schedule(Event c, long delayNanos, long periodNanos) {
+        /* 向上取整，事件不会提前执行 */
+        long deadline = (System.nanoTime() - origin + Math.max(delayNanos, 0) + tickNanos - 1) / tickNanos;
+        long period = periodNanos <= 0 ? 0 : Math.max(1, (periodNanos + tickNanos / 2) / tickNanos);
+        TimingWheel.Timeout<Event> timeout = new TimingWheel.Timeout<>(c, deadline, period);
+        inbox.add(timeout);
+        Thread r = runner;
+        if (r != null && r != Thread.currentThread()) {
+            LockSupport.unpark(r);
+        }
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        runner = Thread.currentThread();
+        try {
+            while (true) {
+                for (TimingWheel.Timeout<Event> t; (t = inbox.poll()) != null; ) {
+                    wheel.add(t);
+                }
+                if (wheel.size() == 0) {
+                    if (inbox.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                wheel.advance((System.nanoTime() - origin) / tickNanos, e -> {
+                    System.out.println(e);
+                    e.action();
+                });
+                long next = wheel.nextTick();
+                if (next == Long.MAX_VALUE || !inbox.isEmpty()) {
+                    continue;
+                }
+                /* 其他线程 addEvent() 时的 unpark() 会让 parkNanos() 提前返回 */
+                long wait = origin + next * tickNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                }
+            }
+        } finally {
+            runner = null;
+        }
+    }
+}
+
+/**
+ * GreenhouseControls 中的内部类通过 addEvent() 添加事件，
+ * 所以只要覆盖 addEvent() 和 run()，这些 Event 就可以直接由时间轮来调度
+ */
+class WheelGreenhouseControls extends GreenhouseControls {
+    private final WheelController wheel = new WheelController();
+
+    @Override
+    public void addEvent(Event c) {
+        wheel.addEvent(c);
+    }
+    public TimingWheel.Timeout<Event> addRecurring(Event c, long periodMillis) {
+        return wheel.addRecurring(c, periodMillis);
+    }
+    @Override
+    public void run() {
+        wheel.run();
+    }
+}
+
+/**
+ * 与 GreenhouseController 相同的事件，但每 2 秒一次的开灯、放水等事件是周期性的，不再需要 Restart
+ */
+class WheelGreenhouseController {
+    public static void main(String[] args) {
+        WheelGreenhouseControls gc = new WheelGreenhouseControls();
+        gc.addEvent(gc.new Bell(900));
+
+        gc.addRecurring(gc.new LightOn(200), 2000);
+        gc.addRecurring(gc.new LightOff(400), 2000);
+        gc.addRecurring(gc.new WaterOn(600), 2000);
+        gc.addRecurring(gc.new WaterOff(800), 2000);
+
+        gc.addEvent(new GreenhouseControls.Terminate(5000));
+        gc.run();
+    }
+}
+/* Output:
+Light is on
+Light is off
+Greenhouse water is on
+Greenhouse water is off
+Bing
+Bing
+Light is on
+Light is off
+Greenhouse water is on
+Bing
+Greenhouse water is off
+Bing
+Light is on
+Light is off
+Bing
+Greenhouse water is on
+Greenhouse water is off
+Terminating
+ */
+
+/**
+ * 比较 Controller 与 WheelController。
+ * 参数：事件个数(默认 1_000_000)、事件分布的时间跨度毫秒数(默认 2000)、轮数(默认 3)；
+ * Controller 的 run() 是 O(n^2) 的，只用 1/100 的事件个数；
+ * 另外用 10 个间隔 100 毫秒的稀疏事件比较空闲时占用的 CPU 时间。
+ */
+class TimingWheelBenchmark {
+    static class Probe extends Event {
+        static long fired, totalLate, maxLate;
+        private final long due;
+
+        Probe(long millisecondDelay) {
+            super(millisecondDelay);
+            due = System.nanoTime() + delayTime.toNanos();
+        }
+        @Override
+        public void action() {
+            long late = System.nanoTime() - due;
+            fired++;
+            totalLate += late;
+            maxLate = Math.max(maxLate, late);
+        }
+        @Override
+        public String toString() {
+            return "";
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int span = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        PrintStream out = System.out;
+        /* 两个控制器都会打印每个事件，测量时丢弃这些输出 */
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        for (int round = 1; round <= rounds; round++) {
+            out.println("round " + round);
+            System.setOut(discard);
+            String[] lines = {
+                    measure("Controller, sparse", new Controller(), 10, 1000, true),
+                    measure("WheelController, sparse", new WheelController(), 10, 1000, true),
+                    measure("Controller, " + events / 100, new Controller(), events / 100, span, false),
+                    measure("WheelController, " + events / 100, new WheelController(), events / 100, span, false),
+                    measure("WheelController, " + events, new WheelController(), events, span, false),
+            };
+            System.setOut(out);
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+    }
+
+    private static String measure(String name, Controller controller, int events, int span, boolean evenly) {
+        Probe.fired = Probe.totalLate = Probe.maxLate = 0;
+        SplittableRandom random = new SplittableRandom(47);
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            controller.addEvent(new Probe(evenly ? (i + 1L) * span / events : random.nextInt(span)));
+        }
+        long added = System.nanoTime();
+        long cpu = THREADS.getCurrentThreadCpuTime();
+        controller.run();
+        long cpuMillis = (THREADS.getCurrentThreadCpuTime() - cpu) / 1_000_000;
+        long wallMillis = (System.nanoTime() - added) / 1_000_000;
+        if (Probe.fired != events) {
+            throw new AssertionError(name + ": fired " + Probe.fired + " of " + events);
+        }
+        return String.format("  %-28s add %7.1f ns/event, run %5d ms, cpu %5d ms, late avg %8.3f ms, max %7.1f ms",
+                name, (double) (added - start) / events, wallMillis, cpuMillis,
+                Probe.totalLate / 1e6 / events, Probe.maxLate / 1e6);
+    }
+}
@@ -57,6 +57,8 @@ class MapOfList {
 
 /**
  * HashMap 在并发场景下的死循环（Infinite Loop）
+ * <p>
+ * NOTE：多线程、不断扩容时各种 Map 的正确性检查和吞吐量对比，见 part_15_并发映射压力测试
  */
 class HashMapInfiniteLoop {
     private static HashMap<Integer, String> map = new HashMap<>(2, 0.75f);
@@ -140,6 +142,9 @@ class Keys {
 
 /**
  * 现在开始我们的试验，创建不同size的HashMap（1、10、100、......10000000），屏蔽了扩容的情况
+ * <p>
+ * NOTE：键和值都是 int 时，不需要 Node 和 Integer 对象的 IntIntMap，以及同时比较内存占用和 GC 的测试，
+ * 见 part_14_基本类型映射IntIntMap
  */
 class TestHashMap {
     static void test(int mapSize) {
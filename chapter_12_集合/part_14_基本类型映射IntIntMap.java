@@ -0,0 +1,437 @@
+/*
+part_10_映射Map 中的 TestHashMap 测试的是 HashMap<Key, Integer>：
+每个条目都是一个 HashMap.Node 对象，值是装箱的 Integer（超出 [-128, 127] 的缓存范围时每次都是新对象），
+查找时要经过 数组 -> Node -> Key 多次指针跳转，1000 万个条目时这些对象本身就要占用几百 MB，
+而且都需要垃圾收集器去扫描。
+
+当键和值都是 int 时，可以使用开放寻址（open addressing）的 IntIntMap：
+1. 键和值分别保存在两个 int 数组中，除了扩容以外不会再分配任何对象；
+2. 线性探测（linear probing）：散列到的槽位被占用时，依次检查下一个槽位，相邻的槽位通常在同一个缓存行中；
+3. 删除时把后面属于同一探测序列的条目往前移（backward shift），不需要“墓碑”标记。
+ */
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 键和值都是 int 的散列表
+ */
+class IntIntMap {
+    /* 键为 0 的条目单独保存，这样 keys 中的 0 就可以表示空槽位 */
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+    /* get() 找不到时的返回值 */
+    private final int missingValue;
+
+    IntIntMap() {
+        this(16, 0);
+    }
+
+    /**
+     * @param expectedSize 预计的条目数，达到之前不会扩容
+     * @param missingValue get() 找不到键时的返回值
+     */
+    IntIntMap(int expectedSize, int missingValue) {
+        int capacity = tableSizeFor((long) Math.ceil(expectedSize / LOAD_FACTOR));
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+        this.missingValue = missingValue;
+    }
+
+    int get(int key) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE) {
+                return missingValue;
+            }
+        }
+    }
+
+    boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return 原来的值，没有时返回 missingValue
+     */
+    int put(int key, int value) {
+        if (key == FREE) {
+            int old = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return old;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+            if (k == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > threshold) {
+                    rehash(keys.length * 2);
+                }
+                return missingValue;
+            }
+        }
+    }
+
+    /**
+     * 把 key 对应的值加上 delta（不存在时从 0 开始），返回新的值，相当于 HashMap.merge(key, delta, Integer::sum)
+     */
+    int addTo(int key, int delta) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            return freeKeyValue += delta;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i] += delta;
+            }
+            if (k == FREE) {
+                keys[i] = key;
+                values[i] = delta;
+                if (++size > threshold) {
+                    rehash(keys.length * 2);
+                }
+                return delta;
+            }
+        }
+    }
+
+    /**
+     * @return 原来的值，没有时返回 missingValue
+     */
+    int remove(int key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return missingValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                int old = values[i];
+                shiftKeys(i);
+                size--;
+                return old;
+            }
+            if (k == FREE) {
+                return missingValue;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    void forEach(IntIntConsumer action) {
+        if (hasFreeKey) {
+            action.accept(FREE, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> sb.append(sb.length() > 1 ? ", " : "").append(k).append('=').append(v));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 删除槽位 pos 上的条目：把后面探测序列中“本可以放在 pos 上”的条目往前移，保证查找时不会提前遇到空槽位
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            int k;
+            while (true) {
+                k = keys[pos];
+                if (k == FREE) {
+                    keys[last] = FREE;
+                    return;
+                }
+                int slot = mix(k) & mask;
+                /* slot 不在 (last, pos] 这个循环区间内时，条目可以移到 last */
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k != FREE) {
+                int i = mix(k) & mask;
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * 与 HashMap.hash() 相同的目的：让高位也参与计算槽位；
+     * 这里先乘以黄金分割数，否则连续的键会落在连续的槽位上，形成很长的探测序列
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(long n) {
+        if (n > 1 << 30) {
+            throw new IllegalArgumentException("too many entries");
+        }
+        return Math.max(16, Integer.highestOneBit((int) Math.max(n - 1, 1)) << 1);
+    }
+}
+
+class IntIntMapDemo {
+    public static void main(String[] args) {
+        /* 与 Statistics 相同：统计随机数的分布 */
+        Random rand = new Random(47);
+        IntIntMap m = new IntIntMap();
+        for (int i = 0; i < 10000; i++) {
+            m.addTo(rand.nextInt(20), 1);
+        }
+        System.out.println(m.size() + " " + m.get(0) + " " + m.get(19));
+        m.remove(0);
+        System.out.println(m.size() + " " + m.containsKey(0));
+    }
+}
+/* Output:
+20 481 464
+19 false
+ */
+
+/**
+ * 与 TestHashMap 相同的测试（1、10、100、......10000000 个条目），比较 HashMap 和 IntIntMap：
+ * 1. put、get 的平均时间（纳秒）；
+ * 2. 内存占用：插入所有条目前后，垃圾收集之后已使用的堆内存之差；
+ * 3. GC 压力：put、get 期间垃圾收集的次数和时间。
+ * <p>
+ * 参数：最大条目数（默认 10,000,000）、轮数（默认 3）；建议使用 -Xmx4g 运行
+ */
+class TestIntIntMap {
+    interface IntMapOps {
+        Object create(int size);
+
+        void put(Object map, int key, int value);
+
+        int get(Object map, int key);
+    }
+
+    static final IntMapOps HASH_MAP_KEY = new IntMapOps() {
+        @Override
+        public Object create(int size) {
+            return new HashMap<Key, Integer>(size);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void put(Object map, int key, int value) {
+            ((HashMap<Key, Integer>) map).put(Keys.of(key), value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int get(Object map, int key) {
+            return ((HashMap<Key, Integer>) map).get(Keys.of(key));
+        }
+
+        @Override
+        public String toString() {
+            return "HashMap<Key, Integer>";
+        }
+    };
+
+    static final IntMapOps HASH_MAP_INTEGER = new IntMapOps() {
+        @Override
+        public Object create(int size) {
+            return new HashMap<Integer, Integer>(size);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void put(Object map, int key, int value) {
+            ((HashMap<Integer, Integer>) map).put(key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int get(Object map, int key) {
+            return ((HashMap<Integer, Integer>) map).get(key);
+        }
+
+        @Override
+        public String toString() {
+            return "HashMap<Integer, Integer>";
+        }
+    };
+
+    static final IntMapOps INT_INT_MAP = new IntMapOps() {
+        @Override
+        public Object create(int size) {
+            return new IntIntMap(size, -1);
+        }
+
+        @Override
+        public void put(Object map, int key, int value) {
+            ((IntIntMap) map).put(key, value);
+        }
+
+        @Override
+        public int get(Object map, int key) {
+            return ((IntIntMap) map).get(key);
+        }
+
+        @Override
+        public String toString() {
+            return "IntIntMap";
+        }
+    };
+
+    /* 防止 JIT 把 get() 的结果当作无用代码消除 */
+    static long sink;
+
+    static void test(IntMapOps ops, int mapSize, IntUnaryOperator keyOf) {
+        long before = usedMemory();
+        long[] gcBefore = gcStats();
+
+        Object map = ops.create(mapSize);
+        long begin = System.nanoTime();
+        for (int i = 0; i < mapSize; i++) {
+            ops.put(map, keyOf.applyAsInt(i), i);
+        }
+        long putNanos = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < mapSize; i++) {
+            sum += ops.get(map, keyOf.applyAsInt(i));
+        }
+        long getNanos = System.nanoTime() - begin;
+        sink += sum;
+
+        long[] gcAfter = gcStats();
+        long footprint = usedMemory() - before;
+        System.out.printf("  %-26s %10d  put %7.1f ns  get %7.1f ns  memory %9.1f KB  gc %3d 次 %5d ms%n",
+                ops, mapSize, putNanos * 1.0 / mapSize, getNanos * 1.0 / mapSize, footprint / 1024.0,
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        /* map 在 usedMemory() 之后才能被回收 */
+        sink += map.hashCode() & 1;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] gcStats() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    public static void main(String[] args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : Keys.MAX_KEY;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        /* 提前初始化 Keys，避免把创建 1000 万个 Key 的时间算进第一次测试 */
+        Keys.of(0);
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            for (int size = 10; size <= maxSize; size *= 10) {
+                /* Keys 只缓存了 [0, MAX_KEY) 的 Key */
+                test(HASH_MAP_KEY, size, i -> i);
+                test(HASH_MAP_INTEGER, size, i -> i);
+                test(INT_INT_MAP, size, i -> i);
+            }
+        }
+    }
+}
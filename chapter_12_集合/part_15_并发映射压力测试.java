@@ -0,0 +1,480 @@
+/*
+part_10_映射Map 中的 HashMapInfiniteLoop 演示了多个线程同时向一个很小的 HashMap(2, 0.75f) 中插入元素：
+扩容时多个线程同时搬运链表，JDK 7 中可能形成环形链表导致 get() 死循环，
+JDK 8 中不再死循环，但仍然会丢失条目、size 不准确，甚至在链表与红黑树之间转换时抛出 ClassCastException。
+
+这里的压力测试用同样“从很小的容量开始、不断扩容”的方式，让多个线程同时写入，比较 4 种 Map：
+1. HashMap：没有任何同步，作为对照；
+2. ConcurrentHashMap；
+3. StripedLockMap：按键的散列值分成若干段，每段是一个 HashMap 和一把锁；
+4. LockFreeReadMap：读不加锁，写按段加锁。
+
+每一轮结束后都会检查：条目数是否正确、每个键的值是否正确、有没有多余的键，
+并统计读线程读到错误值的次数；超过时间限制没有结束的线程视为死循环。
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 压力测试需要的最少操作
+ */
+interface SimpleMap<K, V> {
+    V get(K key);
+
+    V put(K key, V value);
+
+    V remove(K key);
+
+    int size();
+
+    void forEach(BiConsumer<? super K, ? super V> action);
+}
+
+/**
+ * 分段加锁：每段是一个普通的 HashMap，读写都需要获取所在段的锁
+ */
+class StripedLockMap<K, V> implements SimpleMap<K, V> {
+    private final HashMap<K, V>[] segments;
+    private final ReentrantLock[] locks;
+
+    @SuppressWarnings("unchecked")
+    StripedLockMap(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        segments = (HashMap<K, V>[]) new HashMap<?, ?>[n];
+        locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new HashMap<>(2, 0.75f);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private int stripeOf(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (segments.length - 1);
+    }
+
+    @Override
+    public V get(K key) {
+        int s = stripeOf(key);
+        locks[s].lock();
+        try {
+            return segments[s].get(key);
+        } finally {
+            locks[s].unlock();
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int s = stripeOf(key);
+        locks[s].lock();
+        try {
+            return segments[s].put(key, value);
+        } finally {
+            locks[s].unlock();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        int s = stripeOf(key);
+        locks[s].lock();
+        try {
+            return segments[s].remove(key);
+        } finally {
+            locks[s].unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int s = 0; s < segments.length; s++) {
+            locks[s].lock();
+            try {
+                size += segments[s].size();
+            } finally {
+                locks[s].unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int s = 0; s < segments.length; s++) {
+            locks[s].lock();
+            try {
+                segments[s].forEach(action);
+            } finally {
+                locks[s].unlock();
+            }
+        }
+    }
+}
+
+/**
+ * 读不加锁的 Map：
+ * 1. 每个桶是一个不可变的链表，写操作在段锁内复制出一个新链表，再用 volatile 写替换桶的头结点；
+ *    读线程看到的要么是旧链表，要么是新链表，不会看到修改了一半的链表；
+ * 2. 桶的个数和段的个数都是 2 的幂，而且桶数 >= 段数，所以同一个桶永远属于同一段，与扩容无关；
+ * 3. 扩容时按顺序获取所有段的锁，建好新表后再发布，读线程在此期间继续读旧表。
+ * 写操作越少、读操作越多，越适合这种做法。
+ */
+class LockFreeReadMap<K, V> implements SimpleMap<K, V> {
+    private static final class Node<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+        final Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    private final ReentrantLock[] locks;
+    /* 每段的条目数，只在持有该段的锁时修改 */
+    private final int[] counts;
+
+    LockFreeReadMap(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        counts = new int[n * 16];
+        table = new AtomicReferenceArray<>(n);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public V get(K key) {
+        int h = hash(key);
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (Node<K, V> e = tab.get(h & (tab.length() - 1)); e != null; e = e.next) {
+            if (e.hash == h && e.key.equals(key)) {
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int h = hash(key);
+        int s = h & (locks.length - 1);
+        V old;
+        boolean grow;
+        locks[s].lock();
+        try {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            int i = h & (tab.length() - 1);
+            Node<K, V> head = tab.get(i);
+            old = null;
+            Node<K, V> rest = head;
+            for (Node<K, V> e = head; e != null; e = e.next) {
+                if (e.hash == h && e.key.equals(key)) {
+                    old = e.value;
+                    rest = without(head, e);
+                    break;
+                }
+            }
+            tab.set(i, new Node<>(h, key, value, rest));
+            if (old == null) {
+                counts[s * 16]++;
+            }
+            grow = overloaded(counts[s * 16], tab.length());
+        } finally {
+            locks[s].unlock();
+        }
+        if (grow) {
+            resize();
+        }
+        return old;
+    }
+
+    @Override
+    public V remove(K key) {
+        int h = hash(key);
+        int s = h & (locks.length - 1);
+        locks[s].lock();
+        try {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            int i = h & (tab.length() - 1);
+            Node<K, V> head = tab.get(i);
+            for (Node<K, V> e = head; e != null; e = e.next) {
+                if (e.hash == h && e.key.equals(key)) {
+                    tab.set(i, without(head, e));
+                    counts[s * 16]--;
+                    return e.value;
+                }
+            }
+            return null;
+        } finally {
+            locks[s].unlock();
+        }
+    }
+
+    /**
+     * 一段中的条目数超过这一段所有桶数的 3/4 时扩容
+     */
+    private boolean overloaded(int count, int tableLength) {
+        return count > tableLength / locks.length * 3 / 4 + 1;
+    }
+
+    /**
+     * 复制 target 之前的结点，target 之后的结点可以共用
+     */
+    private static <K, V> Node<K, V> without(Node<K, V> head, Node<K, V> target) {
+        Node<K, V> result = target.next;
+        List<Node<K, V>> before = new ArrayList<>();
+        for (Node<K, V> e = head; e != target; e = e.next) {
+            before.add(e);
+        }
+        for (int i = before.size() - 1; i >= 0; i--) {
+            Node<K, V> e = before.get(i);
+            result = new Node<>(e.hash, e.key, e.value, result);
+        }
+        return result;
+    }
+
+    private void resize() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            AtomicReferenceArray<Node<K, V>> old = table;
+            boolean grow = false;
+            for (int s = 0; s < locks.length; s++) {
+                grow |= overloaded(counts[s * 16], old.length());
+            }
+            /* 其他线程可能已经扩容过了 */
+            if (!grow) {
+                return;
+            }
+            AtomicReferenceArray<Node<K, V>> tab = new AtomicReferenceArray<>(old.length() * 2);
+            int mask = tab.length() - 1;
+            for (int i = 0; i < old.length(); i++) {
+                for (Node<K, V> e = old.get(i); e != null; e = e.next) {
+                    int j = e.hash & mask;
+                    tab.set(j, new Node<>(e.hash, e.key, e.value, tab.get(j)));
+                }
+            }
+            table = tab;
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int s = 0; s < locks.length; s++) {
+            locks[s].lock();
+            try {
+                size += counts[s * 16];
+            } finally {
+                locks[s].unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            for (Node<K, V> e = tab.get(i); e != null; e = e.next) {
+                action.accept(e.key, e.value);
+            }
+        }
+    }
+}
+
+/**
+ * 参数：每个线程写入的键数（默认 200,000）、线程数列表（默认 1,2,4,8）、读操作比例（默认 0.5）、轮数（默认 3）
+ */
+class ConcurrentMapStress {
+    static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * 把普通的 Map 包装成 SimpleMap
+     */
+    static <K, V> SimpleMap<K, V> wrap(Map<K, V> map) {
+        return new SimpleMap<K, V>() {
+            @Override
+            public V get(K key) {
+                return map.get(key);
+            }
+
+            @Override
+            public V put(K key, V value) {
+                return map.put(key, value);
+            }
+
+            @Override
+            public V remove(K key) {
+                return map.remove(key);
+            }
+
+            @Override
+            public int size() {
+                return map.size();
+            }
+
+            @Override
+            public void forEach(BiConsumer<? super K, ? super V> action) {
+                map.forEach(action);
+            }
+        };
+    }
+
+    static int valueOf(int key) {
+        return key * 31 + 7;
+    }
+
+    /**
+     * 每个线程写入自己的一段键 [t * keys, (t + 1) * keys)，其间随机读其他线程的键、删除再重新写入自己的键
+     */
+    static void run(String name, SimpleMap<Integer, Integer> map, int threads, int keysPerThread, double readRatio)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong ops = new AtomicLong();
+        AtomicLong badReads = new AtomicLong();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        int totalKeys = threads * keysPerThread;
+        for (int t = 0; t < threads; t++) {
+            int first = t * keysPerThread;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long n = 0;
+                try {
+                    start.await();
+                    for (int k = first; k < first + keysPerThread; k++) {
+                        map.put(k, valueOf(k));
+                        n++;
+                        while (rand.nextDouble() < readRatio) {
+                            int other = rand.nextInt(totalKeys);
+                            Integer v = map.get(other);
+                            if (v != null && v != valueOf(other)) {
+                                badReads.incrementAndGet();
+                            }
+                            n++;
+                        }
+                        if ((k & 7) == 0) {
+                            map.remove(k);
+                            map.put(k, valueOf(k));
+                            n += 2;
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    ops.addAndGet(n);
+                    done.countDown();
+                }
+            }, name + "-" + t);
+            /* 死循环的线程不能阻止 JVM 退出 */
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.out.printf("  %-17s threads=%-2d  超过 %d 秒没有结束（可能死循环）%n", name, threads, TIMEOUT_SECONDS);
+            return;
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("  %-17s threads=%-2d  %8.0f ops/ms  %s%n", name, threads,
+                ops.get() / (elapsed / 1e6), verify(map, totalKeys, badReads.get(), errors));
+    }
+
+    /**
+     * 检查条目数、每个键的值、多余的键
+     */
+    static String verify(SimpleMap<Integer, Integer> map, int totalKeys, long badReads, List<Throwable> errors) {
+        List<String> problems = new ArrayList<>();
+        if (!errors.isEmpty()) {
+            problems.add(errors.size() + " 个线程抛出异常（" + errors.get(0) + "）");
+        }
+        try {
+            int missing = 0;
+            int wrong = 0;
+            for (int k = 0; k < totalKeys; k++) {
+                Integer v = map.get(k);
+                if (v == null) {
+                    missing++;
+                } else if (v != valueOf(k)) {
+                    wrong++;
+                }
+            }
+            int[] entries = {0, 0};
+            map.forEach((k, v) -> {
+                entries[0]++;
+                if (k < 0 || k >= totalKeys) {
+                    entries[1]++;
+                }
+            });
+            if (map.size() != totalKeys) {
+                problems.add("size() = " + map.size() + "，应为 " + totalKeys);
+            }
+            if (entries[0] != totalKeys) {
+                problems.add("遍历到 " + entries[0] + " 个条目");
+            }
+            if (missing > 0) {
+                problems.add("丢失 " + missing + " 个键");
+            }
+            if (wrong > 0) {
+                problems.add(wrong + " 个值错误");
+            }
+            if (entries[1] > 0) {
+                problems.add(entries[1] + " 个多余的键");
+            }
+        } catch (RuntimeException e) {
+            problems.add("检查时抛出异常（" + e + "）");
+        }
+        if (badReads > 0) {
+            problems.add("读到 " + badReads + " 次错误的值");
+        }
+        return problems.isEmpty() ? "OK" : "损坏：" + String.join("，", problems);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int keysPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int[] threadCounts = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[] {1, 2, 4, 8};
+        double readRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            for (int threads : threadCounts) {
+                /* 都从很小的容量开始，让写入过程中不断扩容 */
+                run("HashMap", wrap(new HashMap<>(2, 0.75f)), threads, keysPerThread, readRatio);
+                run("ConcurrentHashMap", wrap(new ConcurrentHashMap<>(2, 0.75f)), threads, keysPerThread, readRatio);
+                run("StripedLockMap", new StripedLockMap<>(64), threads, keysPerThread, readRatio);
+                run("LockFreeReadMap", new LockFreeReadMap<>(64), threads, keysPerThread, readRatio);
+            }
+        }
+    }
+}
@@ -83,6 +83,7 @@ class Prime {
         noneMatch() 操作一旦有失败就会退出
          */
     }
+    /* NOTE：试除法只适合演示 filter()，需要大量素数时使用 part_07_素数筛 中的 PrimeSource.numbers() */
     public LongStream numbers() {
         return LongStream.iterate(2, i -> i + 1)
                 .filter(Prime::isPrime);
@@ -298,6 +299,11 @@ class FileToWords {
     }
 }
 
+/*
+NOTE：flatMap() 解决了存储整个文件的问题，但每一行、每个单词仍然都是一个新的 String，而且只能在一个线程中处理。
+对于很大的文件，可以使用 part_06_流式分词 中的 WordTokenizer：直接扫描字节，并且支持并行流。
+ */
+
 /*
 因为流并不能被复用，所以每次使用都必须从头创建。
 如下：
@@ -107,6 +107,8 @@ class TreeSetOfWords {
 Collectors 里面没有特定的 toTreeSet()，
 但是我们可以通过将集合的构造函数引用传递给 Collectors.toCollection()，
 从而构建任何类型的集合。
+
+NOTE：以 int 为键、不装箱的 Map，以及并行流中不需要合并的并发收集器，见 part_08_收集器 中的 MoreCollectors。
  */
 
 /*
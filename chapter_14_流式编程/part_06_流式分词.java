@@ -0,0 +1,549 @@
+/*
+【流式分词】
+part_02_流创建 中的 FileToWordsRegexp(String filePath) 先把整个文件拼接成一个 String，再用 splitAsStream() 分词；
+part_03_中间操作 中的 FileToWords 虽然是逐行处理，但每一行都要先解码成 String，再用正则表达式切分，
+每个单词又是一个新的 String。
+对于几个 GB 的文件：前者需要把整个文件放进内存，后者会产生大量的临时对象，而且都只能在一个线程中处理。
+
+WordTokenizer 的做法：
+1. 直接扫描文件中的字节，用一张 256 项的分隔符表判断每个字节是不是分隔符，不再解码、也不再使用正则表达式；
+   UTF-8 的多字节字符（字节值 >= 0x80）一律当作单词的一部分，所以不会把一个汉字切成两半；
+2. WordSpliterator 负责文件中的一段 [start, end)，trySplit() 把这一段再分成两半，因此可以用于并行流：
+   一个单词属于它的第一个字节所在的那一段，跨越分界点的单词由前一段读完；
+3. 同一段中重复出现的单词只创建一次 String（在 WordTable 中按字节查找），
+   统计词频 count() 时每一段只为不同的单词创建 String；forEachToken() 则完全不创建 String。
+
+NOTE：nonWordChars() 与正则表达式 \W+ 的区别在于非 ASCII 字符：\W 会把它们当作分隔符，这里把它们当作单词的一部分。
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class WordTokenizer {
+    /**
+     * 接收一个单词：buf[off, off + len) 中的 UTF-8 字节，只在本次调用中有效
+     */
+    interface TokenConsumer {
+        void accept(byte[] buf, int off, int len);
+    }
+
+    private final boolean[] delimiter = new boolean[256];
+
+    private WordTokenizer() {
+    }
+
+    /**
+     * 以给定的 ASCII 字符作为分隔符，例如 " .,?" 相当于正则表达式 [ .,?]+（此外换行符总是分隔符）
+     */
+    static WordTokenizer delimiters(String chars) {
+        WordTokenizer tokenizer = new WordTokenizer();
+        for (char c : chars.toCharArray()) {
+            if (c >= 0x80) {
+                throw new IllegalArgumentException("only ASCII delimiters are supported: " + c);
+            }
+            tokenizer.delimiter[c] = true;
+        }
+        tokenizer.delimiter['\n'] = true;
+        tokenizer.delimiter['\r'] = true;
+        return tokenizer;
+    }
+
+    /**
+     * 除了字母、数字和下划线以外的 ASCII 字符都是分隔符，相当于正则表达式 \W+
+     */
+    static WordTokenizer nonWordChars() {
+        WordTokenizer tokenizer = new WordTokenizer();
+        for (int c = 0; c < 0x80; c++) {
+            tokenizer.delimiter[c] = !(Character.isLetterOrDigit(c) || c == '_');
+        }
+        return tokenizer;
+    }
+
+    boolean isDelimiter(byte b) {
+        return delimiter[b & 0xFF];
+    }
+
+    /**
+     * 单词流，关闭流时关闭文件；可以调用 parallel() 并行处理
+     */
+    Stream<String> words(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return StreamSupport.stream(new WordSpliterator(this, channel, 0, channel.size()), false)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * 依次把每个单词交给 consumer，不创建任何 String
+     *
+     * @return 单词的个数
+     */
+    long forEachToken(Path file, TokenConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new WordSpliterator(this, channel, 0, channel.size()).forEachToken(consumer);
+        }
+    }
+
+    /**
+     * 词频统计
+     *
+     * @param parallel 是否把文件分成多段，在 ForkJoinPool.commonPool() 中并行统计
+     */
+    Map<String, Long> count(Path file, boolean parallel) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WordSpliterator all = new WordSpliterator(this, channel, 0, channel.size());
+            WordTable table = parallel ? ForkJoinPool.commonPool().invoke(new CountTask(all)) : all.count();
+            return table.toMap();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class CountTask extends RecursiveTask<WordTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final WordSpliterator spliterator;
+
+        CountTask(WordSpliterator spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        protected WordTable compute() {
+            WordSpliterator prefix = spliterator.trySplit();
+            if (prefix == null) {
+                return spliterator.count();
+            }
+            CountTask left = new CountTask(prefix);
+            left.fork();
+            WordTable right = new CountTask(spliterator).compute();
+            WordTable result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+}
+
+/**
+ * 按字节查找单词的开放寻址散列表：每个不同的单词只复制一次字节、只创建一次 String，并记录出现次数
+ */
+class WordTable {
+    private byte[][] keys = new byte[1024][];
+    private int[] hashes = new int[1024];
+    private long[] counts = new long[1024];
+    private String[] strings = new String[1024];
+    private int size;
+
+    /**
+     * 查找（不存在时插入）单词所在的槽位
+     */
+    int slot(byte[] buf, int off, int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        h ^= h >>> 16;
+        int mask = keys.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            byte[] key = keys[i];
+            if (key == null) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize();
+                    return slot(buf, off, len);
+                }
+                keys[i] = Arrays.copyOfRange(buf, off, off + len);
+                hashes[i] = h;
+                size++;
+                return i;
+            }
+            if (hashes[i] == h && key.length == len && equals(key, buf, off)) {
+                return i;
+            }
+        }
+    }
+
+    String string(int slot) {
+        String s = strings[slot];
+        if (s == null) {
+            s = new String(keys[slot], StandardCharsets.UTF_8);
+            strings[slot] = s;
+        }
+        return s;
+    }
+
+    void increment(int slot, long n) {
+        counts[slot] += n;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void addAll(WordTable other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            byte[] key = other.keys[i];
+            if (key != null) {
+                int slot = slot(key, 0, key.length);
+                if (strings[slot] == null) {
+                    strings[slot] = other.strings[i];
+                }
+                increment(slot, other.counts[i]);
+            }
+        }
+    }
+
+    Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>(size * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                map.put(string(i), counts[i]);
+            }
+        }
+        return map;
+    }
+
+    private static boolean equals(byte[] key, byte[] buf, int off) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buf[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        String[] oldStrings = strings;
+        int capacity = oldKeys.length * 2;
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        strings = new String[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                counts[i] = oldCounts[j];
+                strings[i] = oldStrings[j];
+            }
+        }
+    }
+}
+
+/**
+ * 文件中 [start, end) 这一段的单词，使用 FileChannel 的定位读取，多个分段可以在不同线程中共用一个 FileChannel
+ */
+class WordSpliterator implements Spliterator<String> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /* 小于这个长度的分段不再拆分 */
+    private static final long MIN_SPLIT = 1024 * 1024;
+
+    private final WordTokenizer tokenizer;
+    private final FileChannel channel;
+    private long start;
+    private final long end;
+
+    /* 已经读入缓冲区的数据在文件中的下一个位置 */
+    private long filePos;
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int bufPos;
+    private int bufLimit;
+    private boolean started;
+    private WordTable table;
+
+    WordSpliterator(WordTokenizer tokenizer, FileChannel channel, long start, long end) {
+        this.tokenizer = tokenizer;
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.filePos = start;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (table == null) {
+            table = new WordTable();
+        }
+        int len = nextToken();
+        if (len < 0) {
+            return false;
+        }
+        action.accept(table.string(table.slot(buf, bufPos - len, len)));
+        return true;
+    }
+
+    long forEachToken(WordTokenizer.TokenConsumer consumer) {
+        long n = 0;
+        int len;
+        while ((len = nextToken()) >= 0) {
+            consumer.accept(buf, bufPos - len, len);
+            n++;
+        }
+        return n;
+    }
+
+    WordTable count() {
+        WordTable counts = new WordTable();
+        int len;
+        while ((len = nextToken()) >= 0) {
+            counts.increment(counts.slot(buf, bufPos - len, len), 1);
+        }
+        return counts;
+    }
+
+    /**
+     * 只能在开始遍历之前拆分：返回前一半，自己保留后一半
+     */
+    @Override
+    public WordSpliterator trySplit() {
+        if (started || end - start < 2 * MIN_SPLIT) {
+            return null;
+        }
+        long mid = start + (end - start) / 2;
+        WordSpliterator prefix = new WordSpliterator(tokenizer, channel, start, mid);
+        start = mid;
+        filePos = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        /* 按平均每个单词（含分隔符）6 个字节估算 */
+        return (end - start) / 6;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * 读取下一个单词，单词位于 buf[bufPos - len, bufPos)
+     *
+     * @return 单词的字节数，没有更多单词时返回 -1
+     */
+    private int nextToken() {
+        if (!started) {
+            started = true;
+            /* 分界点落在单词中间时，这个单词属于前一段 */
+            if (start > 0 && !tokenizer.isDelimiter(byteAt(start - 1))) {
+                while (fill() && !tokenizer.isDelimiter(buf[bufPos])) {
+                    bufPos++;
+                }
+            }
+        }
+        while (fill() && tokenizer.isDelimiter(buf[bufPos])) {
+            bufPos++;
+        }
+        /* 单词从本段之后开始，属于下一段 */
+        if (bufPos == bufLimit || filePos - (bufLimit - bufPos) >= end) {
+            return -1;
+        }
+        int tokenStart = bufPos;
+        while (true) {
+            if (bufPos == bufLimit) {
+                /* 单词跨越缓冲区：把已经读到的部分移到缓冲区开头，必要时扩容 */
+                int len = bufPos - tokenStart;
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                } else {
+                    System.arraycopy(buf, tokenStart, buf, 0, len);
+                }
+                tokenStart = 0;
+                bufPos = len;
+                bufLimit = len;
+                if (!fill()) {
+                    break;
+                }
+            }
+            if (tokenizer.isDelimiter(buf[bufPos])) {
+                break;
+            }
+            bufPos++;
+        }
+        return bufPos - tokenStart;
+    }
+
+    /**
+     * 保证缓冲区中至少还有一个字节未读
+     *
+     * @return 已经读到文件末尾时返回 false
+     */
+    private boolean fill() {
+        if (bufPos < bufLimit) {
+            return true;
+        }
+        if (bufPos == buf.length) {
+            bufPos = 0;
+            bufLimit = 0;
+        }
+        try {
+            int n;
+            do {
+                n = channel.read(ByteBuffer.wrap(buf, bufLimit, buf.length - bufLimit), filePos);
+            } while (n == 0);
+            if (n < 0) {
+                return false;
+            }
+            filePos += n;
+            bufLimit += n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte byteAt(long position) {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        try {
+            channel.read(one, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return one.get(0);
+    }
+}
+
+class WordTokenizerTest {
+    public static void main(String[] args) throws IOException {
+        Path cheese = Files.createTempFile("cheese", ".dat");
+        Files.write(cheese, Arrays.asList(
+                "Not much of a cheese shop really, is it?",
+                "Finest in the district, sir.",
+                "And what leads you to that conclusion?",
+                "Well, it's so clean.",
+                "It's certainly uncontaminated by cheese."));
+        WordTokenizer tokenizer = WordTokenizer.nonWordChars();
+        try (Stream<String> words = tokenizer.words(cheese)) {
+            words.limit(7).forEach(s -> System.out.format("%s ", s));
+        }
+        System.out.println();
+        System.out.println(tokenizer.count(cheese, false).get("cheese"));
+        System.out.println(tokenizer.forEachToken(cheese, (buf, off, len) -> { }));
+        Files.delete(cheese);
+    }
+}
+/* Output:
+Not much of a cheese shop really 
+2
+32
+ */
+
+/**
+ * 在生成的文本上比较几种分词方式的词频统计
+ * <p>
+ * 参数：文件大小（MB，默认 256）、轮数（默认 3）
+ */
+class WordTokenizerBenchmark {
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Path corpus = Files.createTempFile("corpus", ".txt");
+        generate(corpus, megabytes * 1024L * 1024L);
+        WordTokenizer tokenizer = WordTokenizer.nonWordChars();
+        Pattern nonWord = Pattern.compile("\\W+");
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            String all;
+            try (Stream<String> lines = Files.lines(corpus)) {
+                /* 与 FileToWordsRegexp 不同，这里用空格拼接，避免把上一行的最后一个单词和下一行的第一个单词连在一起 */
+                all = lines.collect(Collectors.joining(" "));
+            }
+            Map<String, Long> regexp = nonWord.splitAsStream(all)
+                    .filter(w -> !w.isEmpty())
+                    .collect(Collectors.groupingBy(w -> w, Collectors.counting()));
+            all = null;
+            report("FileToWordsRegexp (joining)", start, regexp);
+
+            start = System.nanoTime();
+            Map<String, Long> perLine;
+            try (Stream<String> lines = Files.lines(corpus)) {
+                perLine = lines.flatMap(nonWord::splitAsStream)
+                        .filter(w -> !w.isEmpty())
+                        .collect(Collectors.groupingBy(w -> w, Collectors.counting()));
+            }
+            report("FileToWords (flatMap)", start, perLine);
+
+            start = System.nanoTime();
+            Map<String, Long> stream;
+            try (Stream<String> words = tokenizer.words(corpus)) {
+                stream = words.parallel().collect(Collectors.groupingByConcurrent(w -> w, Collectors.counting()));
+            }
+            report("WordTokenizer.words().parallel()", start, stream);
+
+            start = System.nanoTime();
+            report("WordTokenizer.count(serial)", start, tokenizer.count(corpus, false));
+            start = System.nanoTime();
+            report("WordTokenizer.count(parallel)", start, tokenizer.count(corpus, true));
+
+            start = System.nanoTime();
+            long tokens = tokenizer.forEachToken(corpus, (buf, off, len) -> { });
+            System.out.printf("  %-36s %8.1f ms  tokens=%d%n", "WordTokenizer.forEachToken",
+                    (System.nanoTime() - start) / 1e6, tokens);
+        }
+        Files.delete(corpus);
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        String[] vocabulary = new String[5000];
+        Random rand = new Random(47);
+        for (int i = 0; i < vocabulary.length; i++) {
+            char[] w = new char[3 + rand.nextInt(8)];
+            for (int j = 0; j < w.length; j++) {
+                w[j] = (char) ('a' + rand.nextInt(26));
+            }
+            vocabulary[i] = new String(w);
+        }
+        String[] punctuation = {" ", " ", " ", ", ", ". ", "? "};
+        StringBuilder sb = new StringBuilder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < size) {
+                sb.setLength(0);
+                for (int i = 0; i < 12; i++) {
+                    sb.append(vocabulary[rand.nextInt(vocabulary.length)])
+                            .append(punctuation[rand.nextInt(punctuation.length)]);
+                }
+                sb.append('\n');
+                written += channel.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    private static void report(String name, long start, Map<String, Long> counts) {
+        long tokens = 0;
+        for (long n : counts.values()) {
+            tokens += n;
+        }
+        System.out.printf("  %-36s %8.1f ms  distinct=%d tokens=%d%n", name, (System.nanoTime() - start) / 1e6,
+                counts.size(), tokens);
+    }
+}
@@ -0,0 +1,437 @@
+/*
+【素数筛】
+part_03_中间操作 中的 Prime 对每个候选数都用 LongStream.rangeClosed(2, sqrt(n)) 试除，
+生成前 n 个素数的复杂度约为 O(n·sqrt(n))，而且只能在一个线程中进行。
+
+PrimeSource 使用分段的埃拉托斯特尼筛法（Sieve of Eratosthenes）：
+1. 只记录奇数，每个奇数占 1 个 bit，1 个 long 可以表示 128 个连续的整数；
+2. 先求出 sqrt(上限) 以内的基础素数，再把区间分成若干段，每段 32 KB（正好放进 CPU 的 L1 缓存），
+   每一段只用基础素数把它们的倍数划掉，这样筛一个很大的区间也不会反复在内存和缓存之间搬运数据；
+   基础素数本身也是一个 PrimeRange（每个奇数 1 bit），用同样的分段筛法求出，
+   sqrt(上限) 为 m 时占用 m / 16 字节，例如 nextPrime(1e18) 需要 1e9 以内的基础素数，约 62.5 MB；
+3. 各段使用的是 long 数组中互不重叠的部分，所以可以在 ForkJoinPool 中并行地筛；
+4. 筛出来的 PrimeRange 可以 O(1) 判断区间内的某个数是否是素数，也可以转换成 LongStream。
+
+numbers() 与 Prime.numbers() 一样返回从 2 开始的素数流，可以直接替换：
+    new Prime().numbers()  ->  new PrimeSource().numbers()
+支持的范围是 0 <= from <= to <= Long.MAX_VALUE，numbers() 在 long 范围内最大的素数之后结束。
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+class PrimeSource {
+    /* 每段 32 KB = 4096 个 long，表示 4096 * 128 个连续的整数 */
+    static final int SEGMENT_WORDS = 4096;
+    static final long SEGMENT_SPAN = SEGMENT_WORDS * 128L;
+
+    /* 小于 Long.MAX_VALUE 的合数一定有一个不大于 floor(sqrt(Long.MAX_VALUE)) 的素因子 */
+    static final long MAX_BASE_LIMIT = 3_037_000_499L;
+
+    /* [0, baseLimit] 以内的基础素数按需扩充，最多到 MAX_BASE_LIMIT */
+    private PrimeRange basePrimes = smallPrimes(1);
+    private long baseLimit = 1;
+
+    /**
+     * 从 2 开始的所有素数，每次筛一段
+     */
+    LongStream numbers() {
+        return StreamSupport.longStream(new Spliterator.OfLong() {
+            private long segmentStart = 0;
+            private Spliterator.OfLong current = Spliterators.emptyLongSpliterator();
+
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                while (!current.tryAdvance(action)) {
+                    if (segmentStart == Long.MAX_VALUE) {
+                        return false;
+                    }
+                    long segmentEnd = segmentEnd(segmentStart);
+                    current = sieve(segmentStart, segmentEnd, false).spliterator();
+                    segmentStart = segmentEnd;
+                }
+                return true;
+            }
+
+            @Override
+            public Spliterator.OfLong trySplit() {
+                return null;
+            }
+
+            @Override
+            public long estimateSize() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public int characteristics() {
+                return ORDERED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+            }
+
+            @Override
+            public Comparator<? super Long> getComparator() {
+                return null;
+            }
+        }, false);
+    }
+
+    /**
+     * [from, to) 中的所有素数
+     */
+    LongStream numbers(long from, long to, boolean parallel) {
+        return sieve(from, to, parallel).stream();
+    }
+
+    /**
+     * 大于等于 n 的最小素数（用于确定散列表、分片的大小）
+     *
+     * @throws IllegalArgumentException n 大于 long 范围内最大的素数
+     */
+    long nextPrime(long n) {
+        for (long from = Math.max(n, 2); from < Long.MAX_VALUE; ) {
+            long to = segmentEnd(from);
+            long p = sieve(from, to, false).next(from);
+            if (p >= 0) {
+                return p;
+            }
+            from = to;
+        }
+        throw new IllegalArgumentException("No prime >= " + n + " fits in a long");
+    }
+
+    /* from + SEGMENT_SPAN，不超过 Long.MAX_VALUE */
+    private static long segmentEnd(long from) {
+        return from > Long.MAX_VALUE - SEGMENT_SPAN ? Long.MAX_VALUE : from + SEGMENT_SPAN;
+    }
+
+    /**
+     * 筛出 [from, to) 中的所有素数
+     *
+     * @param parallel 是否在 ForkJoinPool.commonPool() 中并行地筛各个分段
+     */
+    PrimeRange sieve(long from, long to, boolean parallel) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("[" + from + ", " + to + ")");
+        }
+        return sieve(from, to, basePrimes((long) Math.sqrt((double) to) + 1), parallel);
+    }
+
+    private static PrimeRange sieve(long from, long to, PrimeRange primes, boolean parallel) {
+        PrimeRange range = new PrimeRange(from, to);
+        int segments = (range.words.length + SEGMENT_WORDS - 1) / SEGMENT_WORDS;
+        IntStream indexes = IntStream.range(0, segments);
+        if (parallel) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(segment -> sieveSegment(range, primes, segment));
+        range.clearOutOfRange();
+        return range;
+    }
+
+    /**
+     * 把第 segment 段中基础素数（奇素数）的倍数划掉
+     */
+    private static void sieveSegment(PrimeRange range, PrimeRange primes, int segment) {
+        long[] words = range.words;
+        int firstWord = segment * SEGMENT_WORDS;
+        int lastWord = Math.min(firstWord + SEGMENT_WORDS, words.length);
+        /*
+         * 本段表示的整数区间 [lo, lo + span)，第 i 个 bit 对应奇数 lo + 2i + 1；
+         * to 接近 Long.MAX_VALUE 时 lo + span 会溢出，所以下面只用相对 lo 的偏移量计算
+         */
+        long lo = range.base + firstWord * 128L;
+        long span = (lastWord - firstWord) * 128L;
+        long bits = span / 2;
+        long[] base = primes.words;
+        for (int w = 0; w < base.length; w++) {
+            for (long word = base[w]; word != 0; word &= word - 1) {
+                long p = primes.base + ((long) w * 64 + Long.numberOfTrailingZeros(word)) * 2 + 1;
+                /* p 不大于 MAX_BASE_LIMIT，p * p 不会溢出 */
+                long square = p * p;
+                if (square - lo >= span) {
+                    return;
+                }
+                /* 从 max(p * p, 第一个 >= lo 的 p 的倍数) 开始，只划奇数倍 */
+                long offset = square > lo ? square - lo : Math.floorMod(-lo, p);
+                if (((lo + offset) & 1) == 0) {
+                    offset += p;
+                }
+                for (long bit = (offset - 1) / 2; bit < bits; bit += p) {
+                    words[firstWord + (int) (bit >>> 6)] &= ~(1L << bit);
+                }
+            }
+        }
+    }
+
+    /**
+     * [0, limit] 以内的基础素数：先用普通的筛法求出 sqrt(limit) 以内的素数，再用它们分段筛出 [0, limit]
+     */
+    private synchronized PrimeRange basePrimes(long limit) {
+        if (limit <= baseLimit) {
+            return basePrimes;
+        }
+        long n = Math.min(Math.max(limit, 2 * baseLimit), MAX_BASE_LIMIT);
+        basePrimes = n <= SEGMENT_SPAN
+                ? smallPrimes(n)
+                : sieve(0, n + 1, smallPrimes((long) Math.sqrt((double) n) + 1), false);
+        baseLimit = n;
+        return basePrimes;
+    }
+
+    /**
+     * [0, n] 以内的素数（普通的埃拉托斯特尼筛法，只用于较小的 n）
+     */
+    private static PrimeRange smallPrimes(long n) {
+        PrimeRange range = new PrimeRange(0, n + 1);
+        for (long i = 3; i * i <= n; i += 2) {
+            if (range.isPrime(i)) {
+                for (long j = i * i; j <= n; j += 2 * i) {
+                    range.clearBit((j - 1) / 2);
+                }
+            }
+        }
+        range.clearOutOfRange();
+        return range;
+    }
+}
+
+/**
+ * 一个区间内的筛法结果：只记录奇数，第 i 个 bit 对应奇数 base + 2i + 1
+ */
+class PrimeRange {
+    final long from;
+    final long to;
+    /* 不大于 from 的最大的 128 的倍数，保证每个 long 都对应 128 个完整的整数，各段之间不会共用一个 long */
+    final long base;
+    final long[] words;
+
+    PrimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+        this.base = from & ~127L;
+        /* to - base + 127 在 to 接近 Long.MAX_VALUE 时会溢出 */
+        long wordCount = to == base ? 0 : (to - base - 1) / 128 + 1;
+        if (wordCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("range too large: [" + from + ", " + to + ")");
+        }
+        this.words = new long[(int) wordCount];
+        Arrays.fill(words, -1L);
+    }
+
+    /**
+     * O(1) 判断 from <= n < to 是否是素数
+     */
+    boolean isPrime(long n) {
+        if (n < from || n >= to) {
+            throw new IndexOutOfBoundsException(n + " not in [" + from + ", " + to + ")");
+        }
+        if (n == 2) {
+            return true;
+        }
+        if ((n & 1) == 0) {
+            return false;
+        }
+        long bit = (n - base - 1) / 2;
+        return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * 区间内素数的个数
+     */
+    long count() {
+        long count = from <= 2 && 2 < to ? 1 : 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 大于等于 n 的第一个素数，区间内没有时返回 -1
+     */
+    long next(long n) {
+        if (n <= 2 && from <= 2 && 2 < to) {
+            return 2;
+        }
+        long bit = (Math.max(n, from) - base) / 2;
+        long totalBits = words.length * 64L;
+        while (bit < totalBits) {
+            int index = (int) (bit >>> 6);
+            long word = words[index] & (-1L << bit);
+            if (word != 0) {
+                return base + ((long) index * 64 + Long.numberOfTrailingZeros(word)) * 2 + 1;
+            }
+            bit = (long) (index + 1) * 64;
+        }
+        return -1;
+    }
+
+    LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    Spliterator.OfLong spliterator() {
+        return new BitSpliterator(0, words.length);
+    }
+
+    /**
+     * 1 不是素数，[from, to) 之外的数也不算
+     */
+    void clearOutOfRange() {
+        /* 第 i 个 bit 对应 base + 2i + 1，用相对 base 的偏移量计算，to 接近 Long.MAX_VALUE 时不会溢出 */
+        long totalBits = words.length * 64L;
+        long first = Math.max(from, 2) - base;
+        for (long bit = 0; bit < totalBits && 2 * bit + 1 < first; bit++) {
+            clearBit(bit);
+        }
+        for (long bit = (to - base) / 2; bit < totalBits; bit++) {
+            clearBit(bit);
+        }
+    }
+
+    void clearBit(long bit) {
+        words[(int) (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    /**
+     * 按 long 的下标拆分，可用于并行流
+     */
+    private final class BitSpliterator implements Spliterator.OfLong {
+        private int index;
+        private final int fence;
+        private long word;
+        private boolean twoPending;
+
+        BitSpliterator(int index, int fence) {
+            this.index = index;
+            this.fence = fence;
+            this.word = index < fence ? words[index] : 0;
+            this.twoPending = index == 0 && from <= 2 && 2 < to;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (twoPending) {
+                twoPending = false;
+                action.accept(2);
+                return true;
+            }
+            while (word == 0) {
+                if (++index >= fence) {
+                    return false;
+                }
+                word = words[index];
+            }
+            int bit = Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            action.accept(base + ((long) index * 64 + bit) * 2 + 1);
+            return true;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            int mid = (index + 1 + fence) >>> 1;
+            if (mid <= index + 1 || fence - index < 1024) {
+                return null;
+            }
+            BitSpliterator prefix = new BitSpliterator(index, mid);
+            prefix.word = word;
+            prefix.twoPending = twoPending;
+            twoPending = false;
+            index = mid;
+            word = words[mid];
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            /* 按平均每个 long 中有 1/4 的 bit 为素数粗略估算 */
+            return (fence - index) * 16L;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+    }
+}
+
+class PrimeSourceTest {
+    public static void main(String[] args) {
+        new PrimeSource().numbers()
+                .limit(10)
+                .forEach(n -> System.out.format("%d ", n));
+        System.out.println();
+        new PrimeSource().numbers()
+                .skip(90)
+                .limit(10)
+                .forEach(n -> System.out.format("%d ", n));
+        System.out.println();
+
+        PrimeSource source = new PrimeSource();
+        PrimeRange range = source.sieve(0, 100_000_000, true);
+        System.out.println(range.count());
+        System.out.println(range.isPrime(99_999_989));
+        System.out.println(source.nextPrime(1 << 20));
+        /* 需要 1e9 以内的基础素数（约 62.5 MB） */
+        System.out.println(source.nextPrime(1_000_000_000_000_000_000L));
+    }
+}
+/* Output:
+2 3 5 7 11 13 17 19 23 29
+467 479 487 491 499 503 509 521 523 541
+5761455
+true
+1048583
+1000000000000000003
+ */
+
+/**
+ * 比较 Prime 的试除法与 PrimeSource 的筛法
+ * <p>
+ * 参数：生成的素数个数（默认 200,000）、筛的上限（默认 1,000,000,000）、轮数（默认 3）
+ */
+class PrimeSourceBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long limit = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000_000L;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            long last = new Prime().numbers().limit(count).reduce(0, (a, b) -> b);
+            report("Prime.numbers().limit(" + count + ")", start, last);
+
+            start = System.nanoTime();
+            last = new PrimeSource().numbers().limit(count).reduce(0, (a, b) -> b);
+            report("PrimeSource.numbers().limit(" + count + ")", start, last);
+
+            start = System.nanoTime();
+            report("PrimeSource.sieve(0, " + limit + ") serial", start,
+                    new PrimeSource().sieve(0, limit, false).count());
+
+            start = System.nanoTime();
+            report("PrimeSource.sieve(0, " + limit + ") parallel", start,
+                    new PrimeSource().sieve(0, limit, true).count());
+
+            start = System.nanoTime();
+            report("PrimeSource.numbers(0, " + limit + ").parallel().sum()", start,
+                    new PrimeSource().numbers(0, limit, true).parallel().sum());
+        }
+    }
+
+    private static void report(String name, long start, long result) {
+        System.out.printf("  %-50s %9.1f ms  (%d)%n", name, (System.nanoTime() - start) / 1e6, result);
+    }
+}
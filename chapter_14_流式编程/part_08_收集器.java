@@ -0,0 +1,523 @@
+/*
+【收集器】
+part_05_终端操作 中的 MapCollector、TreeSetOfWords、SpecialCollector 使用的都是 Collectors 中预设的收集器，
+或者 collect(ArrayList::new, ArrayList::add, ArrayList::addAll) 这样的三参数形式。
+它们有两个问题：
+1. 键是 Integer、Character 这样的包装类型，每个元素都要装箱，Map 中的每个条目也是一个对象；
+2. 并行流中，每个线程各自收集一份结果，最后再用 combiner 把这些结果逐个复制、合并。
+
+MoreCollectors 提供了几类收集器：
+1. 以 int 为键的 Map：IntObjMap（int -> 对象）和 IntCounter（int -> 计数），使用开放寻址的数组，不装箱；
+2. 并发收集器（Collector.Characteristics.CONCURRENT）：并行流中所有线程共用同一个结果容器，没有 combiner 的复制；
+3. topK()、histogram()、quantiles()：只保留需要的数据，而不是先 sorted() 或者把所有元素收集到 List 中再处理。
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.*;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * int -> V 的开放寻址散列表
+ */
+class IntObjMap<V> {
+    private static final int FREE = 0;
+
+    private int[] keys = new int[16];
+    private Object[] values = new Object[16];
+    /* 键为 0 的条目单独保存，这样 keys 中的 0 就可以表示空槽位 */
+    private boolean hasZero;
+    private V zeroValue;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        if (key == FREE) {
+            return zeroValue;
+        }
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    /**
+     * @return 原来的值，没有时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (key == FREE) {
+            V old = zeroValue;
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            if (keys[i] == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length) {
+                    resize();
+                }
+                return null;
+            }
+        }
+    }
+
+    boolean containsKey(int key) {
+        return key == FREE ? hasZero : indexOf(key) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(IntObjConsumer<? super V> action) {
+        if (hasZero) {
+            action.accept(FREE, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    interface IntObjConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        forEach((k, v) -> joiner.add(k + "=" + v));
+        return joiner.toString();
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE) {
+                int i = mix(oldKeys[j]) & mask;
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
+
+/**
+ * int -> 出现次数
+ */
+class IntCounter {
+    private int[] keys = new int[16];
+    private long[] counts = new long[16];
+    private long zeroCount;
+    private int size;
+
+    void add(int key) {
+        add(key, 1);
+    }
+
+    /**
+     * n 为 0 时什么也不做，不会把 key 计入 size()
+     */
+    void add(int key, long n) {
+        if (n == 0) {
+            return;
+        }
+        if (key == 0) {
+            if (zeroCount == 0) {
+                size++;
+            }
+            zeroCount += n;
+            return;
+        }
+        int mask = keys.length - 1;
+        for (int i = IntObjMap.mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                counts[i] += n;
+                return;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                counts[i] = n;
+                if (++size * 2 > keys.length) {
+                    resize();
+                }
+                return;
+            }
+        }
+    }
+
+    long get(int key) {
+        if (key == 0) {
+            return zeroCount;
+        }
+        int mask = keys.length - 1;
+        for (int i = IntObjMap.mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return counts[i];
+            }
+            if (keys[i] == 0) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void addAll(IntCounter other) {
+        if (other.zeroCount != 0) {
+            add(0, other.zeroCount);
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    void forEach(IntLongConsumer action) {
+        if (zeroCount != 0) {
+            action.accept(0, zeroCount);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    interface IntLongConsumer {
+        void accept(int key, long count);
+    }
+
+    /**
+     * 统计 IntStream 中每个值出现的次数，不装箱
+     */
+    static IntCounter of(IntStream stream) {
+        return stream.collect(IntCounter::new, IntCounter::add, IntCounter::addAll);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        forEach((k, n) -> joiner.add(k + "=" + n));
+        return joiner.toString();
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = IntObjMap.mix(oldKeys[j]) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+}
+
+class MoreCollectors {
+    /**
+     * 相当于 Collectors.toMap(key, value)，但键是 int；重复的键抛出 IllegalStateException
+     */
+    static <T, V> Collector<T, ?, IntObjMap<V>> toIntObjMap(ToIntFunction<? super T> key,
+                                                            Function<? super T, ? extends V> value) {
+        return Collector.of(IntObjMap::new,
+                (map, t) -> putUnique(map, key.applyAsInt(t), value.apply(t)),
+                (left, right) -> {
+                    right.forEach((k, v) -> putUnique(left, k, v));
+                    return left;
+                });
+    }
+
+    private static <V> void putUnique(IntObjMap<V> map, int key, V value) {
+        if (map.containsKey(key)) {
+            throw new IllegalStateException("Duplicate key " + key);
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * 相当于 Collectors.groupingBy(key, Collectors.counting())，但键是 int
+     */
+    static <T> Collector<T, ?, IntCounter> countingBy(ToIntFunction<? super T> key) {
+        return Collector.of(IntCounter::new,
+                (counter, t) -> counter.add(key.applyAsInt(t)),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    /**
+     * 并发计数：所有线程共用一个 ConcurrentHashMap，每个键的计数是一个 LongAdder
+     */
+    static <T, K> Collector<T, ?, ConcurrentMap<K, LongAdder>> concurrentCountingBy(
+            Function<? super T, ? extends K> key) {
+        return Collector.of(ConcurrentHashMap::new,
+                (map, t) -> map.computeIfAbsent(key.apply(t), k -> new LongAdder()).increment(),
+                (left, right) -> {
+                    /* 只有在顺序流或者流不是 UNORDERED 的情况下才会调用 */
+                    right.forEach((k, n) -> left.computeIfAbsent(k, x -> new LongAdder()).add(n.sum()));
+                    return left;
+                },
+                Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * 相当于 Collectors.toCollection(TreeSet::new)，但在并行流中所有线程共用一个 ConcurrentSkipListSet
+     */
+    static <T extends Comparable<? super T>> Collector<T, ?, NavigableSet<T>> toConcurrentSortedSet() {
+        return Collector.<T, NavigableSet<T>>of(ConcurrentSkipListSet::new, Set::add,
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                },
+                Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * 最大的 k 个元素（从大到小），相当于 sorted(comparator.reversed()).limit(k)，
+     * 但只保留一个大小为 k 的最小堆，合并时也只需要 O(k log k)
+     */
+    static <T> Collector<T, ?, List<T>> topK(int k, Comparator<? super T> comparator) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k: " + k);
+        }
+        return Collector.of(
+                () -> new PriorityQueue<T>(k + 1, comparator),
+                (heap, t) -> offer(heap, t, k, comparator),
+                (left, right) -> {
+                    for (T t : right) {
+                        offer(left, t, k, comparator);
+                    }
+                    return left;
+                },
+                heap -> {
+                    List<T> result = new ArrayList<>(heap);
+                    result.sort(comparator.reversed());
+                    return result;
+                });
+    }
+
+    private static <T> void offer(PriorityQueue<T> heap, T t, int k, Comparator<? super T> comparator) {
+        if (heap.size() < k) {
+            heap.add(t);
+        } else if (comparator.compare(t, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(t);
+        }
+    }
+
+    /**
+     * 等宽直方图：[min, max) 分成 buckets 个桶，
+     * 返回长度为 buckets + 2 的数组，第 0 个和最后一个分别是小于 min 和大于等于 max 的元素个数
+     */
+    static <T> Collector<T, ?, long[]> histogram(ToDoubleFunction<? super T> value,
+                                                 double min, double max, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets: " + buckets);
+        }
+        if (!(min < max)) {
+            throw new IllegalArgumentException("[" + min + ", " + max + ")");
+        }
+        double width = (max - min) / buckets;
+        return Collector.of(
+                () -> new long[buckets + 2],
+                (counts, t) -> {
+                    double v = value.applyAsDouble(t);
+                    int bucket = v < min ? 0 : v >= max ? buckets + 1 : 1 + Math.min((int) ((v - min) / width), buckets - 1);
+                    counts[bucket]++;
+                },
+                (left, right) -> {
+                    for (int i = 0; i < left.length; i++) {
+                        left[i] += right[i];
+                    }
+                    return left;
+                });
+    }
+
+    /**
+     * 精确的分位数（最近秩法），例如 quantiles(f, 0.5, 0.99) 返回中位数和 99 分位数；
+     * 值保存在 double 数组中，不装箱，结束时只排序一次
+     */
+    static <T> Collector<T, ?, double[]> quantiles(ToDoubleFunction<? super T> value, double... qs) {
+        for (double q : qs) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("quantile: " + q);
+            }
+        }
+        return Collector.of(
+                DoubleBuffer::new,
+                (buffer, t) -> buffer.add(value.applyAsDouble(t)),
+                DoubleBuffer::addAll,
+                buffer -> {
+                    double[] sorted = Arrays.copyOf(buffer.values, buffer.size);
+                    Arrays.sort(sorted);
+                    double[] result = new double[qs.length];
+                    for (int i = 0; i < qs.length; i++) {
+                        result[i] = sorted.length == 0 ? Double.NaN
+                                : sorted[Math.max(0, (int) Math.ceil(qs[i] * sorted.length) - 1)];
+                    }
+                    return result;
+                });
+    }
+
+    private static final class DoubleBuffer {
+        double[] values = new double[64];
+        int size;
+
+        void add(double v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        DoubleBuffer addAll(DoubleBuffer other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+            return this;
+        }
+    }
+}
+
+class MoreCollectorsTest {
+    public static void main(String[] args) {
+        /* 与 MapCollector 相同，但键不装箱 */
+        IntObjMap<Character> map = new RandomPair().stream()
+                .limit(8)
+                .collect(MoreCollectors.toIntObjMap(Pair::getI, Pair::getC));
+        System.out.println(map.size() + " " + map.get(new RandomPair().stream().findFirst().get().getI()));
+
+        System.out.println(IntCounter.of(new Random(47).ints(1000, 0, 5)));
+        System.out.println(FileToWords.stream().parallel().collect(MoreCollectors.toConcurrentSortedSet()));
+        System.out.println(FileToWords.stream().collect(MoreCollectors.topK(3, Comparator.comparingInt(String::length))));
+        System.out.println(Arrays.toString(IntStream.range(0, 100).boxed()
+                .collect(MoreCollectors.histogram(i -> i, 0, 50, 5))));
+        System.out.println(Arrays.toString(IntStream.rangeClosed(1, 100).boxed().parallel()
+                .collect(MoreCollectors.quantiles(i -> i, 0.5, 0.9, 0.99))));
+    }
+}
+/* Output:
+8 N
+{0=203, 4=204, 2=204, 3=195, 1=194}
+[Not, a, cheese, is, it, much, of, really, shop]
+[cheese, really, shop]
+[0, 10, 10, 10, 10, 10, 50]
+[50.0, 90.0, 99.0]
+ */
+
+/**
+ * 在顺序流和并行流上比较 JDK 的收集器和 MoreCollectors
+ * <p>
+ * 参数：元素个数（默认 10,000,000）、不同键的个数（默认 10,000）、轮数（默认 5）
+ */
+class MoreCollectorsBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int[] data = new Random(47).ints(n, 0, keys).toArray();
+        List<Integer> boxed = Arrays.stream(data).boxed().collect(Collectors.toList());
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            for (boolean parallel : new boolean[] {false, true}) {
+                String mode = parallel ? "parallel  " : "sequential";
+                run(mode + " groupingBy(counting())", () ->
+                        stream(boxed, parallel).collect(Collectors.groupingBy(i -> i, Collectors.counting())).size());
+                run(mode + " groupingByConcurrent(counting())", () ->
+                        stream(boxed, parallel).collect(Collectors.groupingByConcurrent(i -> i, Collectors.counting())).size());
+                run(mode + " MoreCollectors.countingBy", () ->
+                        stream(boxed, parallel).collect(MoreCollectors.countingBy(i -> i)).size());
+                run(mode + " MoreCollectors.concurrentCountingBy", () ->
+                        stream(boxed, parallel).collect(MoreCollectors.concurrentCountingBy(i -> i)).size());
+                run(mode + " IntCounter.of(IntStream)", () -> {
+                    IntStream s = Arrays.stream(data);
+                    return IntCounter.of(parallel ? s.parallel() : s).size();
+                });
+                run(mode + " sorted(reverseOrder()).limit(100)", () ->
+                        stream(boxed, parallel).sorted(Comparator.reverseOrder()).limit(100).collect(Collectors.toList()).size());
+                run(mode + " MoreCollectors.topK(100)", () ->
+                        stream(boxed, parallel).collect(MoreCollectors.topK(100, Comparator.<Integer>naturalOrder())).size());
+                run(mode + " groupingBy(bucket) histogram", () ->
+                        stream(boxed, parallel).collect(Collectors.groupingBy(i -> i * 20 / keys, Collectors.counting())).size());
+                run(mode + " MoreCollectors.histogram", () ->
+                        stream(boxed, parallel).collect(MoreCollectors.histogram(i -> i, 0, keys, 20)).length);
+                run(mode + " toList + sort quantiles", () -> {
+                    List<Integer> list = stream(boxed, parallel).collect(Collectors.toList());
+                    list.sort(null);
+                    return list.get(list.size() / 2);
+                });
+                run(mode + " MoreCollectors.quantiles", () ->
+                        (long) stream(boxed, parallel).collect(MoreCollectors.quantiles(i -> i, 0.5))[0]);
+            }
+        }
+    }
+
+    private static Stream<Integer> stream(List<Integer> list, boolean parallel) {
+        return parallel ? list.parallelStream() : list.stream();
+    }
+
+    private static void run(String name, LongSupplier task) {
+        long start = System.nanoTime();
+        long result = task.getAsLong();
+        System.out.printf("  %-48s %8.1f ms  (%d)%n", name, (System.nanoTime() - start) / 1e6, result);
+    }
+}
@@ -44,6 +44,8 @@ Visitor 设计模式提供了一种标准机制来访问集合中的每个对象
 这样，在我们的匿名内部类中，我们只需要重写非标准行为的方法：
     visitFile() 和 postVisitDirectory() 实现删除文件和删除目录。
 两者都应该返回标志位决定是否继续访问(这样就可以继续访问，直到找到所需要的)。
+
+NOTE：rmdir() 在一个线程中逐个删除，并行删除见 part_08_并行目录遍历 中的 ParallelWalker.delete()。
  */
 
 
@@ -86,6 +86,9 @@ evt.kind(): ENTRY_DELETE
 可能认为，如果说"监视这个目录"，自然会包含整个目录和下面子目录，
 但实际上：只会监视给定的目录，而不是下面的所有内容。
 如果需要监视整个树目录，必须在整个树的每个子目录上放置一个 Watchservice。
+
+NOTE：下面的 TreeWatcher 每个子目录都要一个 WatchService 和一个线程，而且不会监听之后新建的子目录。
+实际使用时可以把所有目录注册到同一个 WatchService 上，见 part_07_目录树监听服务 中的 TreeWatchService。
  */
 
 class TreeWatcher {
@@ -11,6 +11,9 @@ import java.nio.file.*;
 模式有两个选项：glob 和 regex。
 glob 比较简单，实际上功能非常强大，因此您可以使用 glob 解决许多问题。
 如果问题更复杂，可以使用 regex。
+
+NOTE：Files.walk() 会先生成目录树中的每个条目，再由 PathMatcher 过滤；
+目录树很大时，可以使用 part_08_并行目录遍历 中的 ParallelWalker，在遍历时就跳过不可能匹配的子目录。
  */
 
 /**
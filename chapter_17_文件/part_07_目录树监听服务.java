@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/*
+【目录树监听服务】
+part_04_路径监听 中的 TreeWatcher 为每个子目录创建一个 WatchService 和一个单线程的线程池：
+目录越多，线程越多，而且这些线程永远不会结束。
+
+TreeWatchService 只使用一个 WatchService 和一个线程：
+1. 启动时遍历整个目录树，把每个目录都注册到同一个 WatchService 上；
+2. 发现新建的子目录时，自动注册它（以及它下面已经存在的内容）；
+3. 同一个路径在防抖窗口（debounce）内的多个事件会被合并成一次变更，
+   例如：先 CREATE 再 MODIFY 合并为 CREATE，先 CREATE 再 DELETE 则相互抵消；
+4. 窗口结束后，把这段时间内的所有变更作为一批交给订阅者；
+5. 统计事件延迟（从第一次收到事件到交给订阅者的时间）和 OVERFLOW（事件太多被操作系统丢弃）的次数。
+订阅者抛出的异常交给构造时传入的 errorHandler，不会终止监听线程；close() 会等待监听线程结束。
+ */
+class TreeWatchService implements AutoCloseable {
+
+    /**
+     * 一个路径合并后的变更
+     */
+    static final class Change {
+        final Path path;
+        final WatchEvent.Kind<Path> kind;
+        final int events;
+
+        Change(Path path, WatchEvent.Kind<Path> kind, int events) {
+            this.path = path;
+            this.kind = kind;
+            this.events = events;
+        }
+
+        @Override
+        public String toString() {
+            return kind.name() + " " + path + " (" + events + " 个事件)";
+        }
+    }
+
+    private static final class Pending {
+        WatchEvent.Kind<Path> kind;
+        int events;
+        final long firstSeen;
+        long lastSeen;
+
+        Pending(WatchEvent.Kind<Path> kind, long now) {
+            this.kind = kind;
+            this.firstSeen = now;
+            this.lastSeen = now;
+        }
+    }
+
+    private final WatchService watcher;
+    private final long debounceNanos;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    /* 按第一次出现的顺序保存，交给订阅者时也按这个顺序 */
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private final List<Consumer<List<Change>>> subscribers = new CopyOnWriteArrayList<>();
+    private final Consumer<? super RuntimeException> errorHandler;
+    private final Thread thread;
+
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong deliveredChanges = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * 订阅者抛出的异常交给监听线程的 UncaughtExceptionHandler（没有设置时使用 Thread.getDefaultUncaughtExceptionHandler()），
+     * 但监听线程不会因此结束
+     */
+    TreeWatchService(Path root, long debounce, TimeUnit unit) throws IOException {
+        this(root, debounce, unit, null);
+    }
+
+    /**
+     * @param errorHandler 处理订阅者抛出的异常，在监听线程中调用；为 null 时与三个参数的构造器相同
+     */
+    TreeWatchService(Path root, long debounce, TimeUnit unit, Consumer<? super RuntimeException> errorHandler)
+            throws IOException {
+        this.watcher = root.getFileSystem().newWatchService();
+        this.debounceNanos = unit.toNanos(debounce);
+        this.errorHandler = errorHandler != null
+                ? errorHandler
+                : e -> Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+        registerTree(root, false);
+        this.thread = new Thread(this::run, "tree-watch-service");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void subscribe(Consumer<List<Change>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    long overflowCount() {
+        return overflows.get();
+    }
+
+    long deliveredCount() {
+        return deliveredChanges.get();
+    }
+
+    /** 平均事件延迟（毫秒），包括防抖窗口 */
+    double averageLagMillis() {
+        long delivered = deliveredChanges.get();
+        return delivered == 0 ? 0 : totalLagNanos.get() / 1e6 / delivered;
+    }
+
+    double maxLagMillis() {
+        return maxLagNanos.get() / 1e6;
+    }
+
+    /**
+     * 关闭 WatchService，并等待监听线程结束（包括正在执行的订阅者）；在订阅者中调用时不等待
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 注册 start 及其下面的所有目录
+     *
+     * @param reportExisting 是否把已经存在的文件当作新建事件报告（用于新建的子目录：在注册完成之前创建的文件不会产生事件）
+     */
+    private void registerTree(Path start, boolean reportExisting) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                if (reportExisting && !dir.equals(start)) {
+                    record(dir, ENTRY_CREATE, System.nanoTime());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (reportExisting) {
+                    record(file, ENTRY_CREATE, System.nanoTime());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                /* 遍历过程中文件被删除了，忽略 */
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            long deadline = 0;
+            while (true) {
+                /* 有待交付的变更时，只等到最早的那个窗口结束；否则一直等待 */
+                WatchKey key = pending.isEmpty()
+                        ? watcher.take()
+                        : watcher.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    process(key);
+                }
+                deadline = flush(System.nanoTime());
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            /* close() 之后结束线程 */
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(WatchKey key) {
+        Path dir = keys.get(key);
+        long now = System.nanoTime();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflows.incrementAndGet();
+                continue;
+            }
+            WatchEvent<Path> pathEvent = (WatchEvent<Path>) event;
+            Path path = dir.resolve(pathEvent.context());
+            record(path, pathEvent.kind(), now);
+            if (pathEvent.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(path, true);
+                } catch (IOException e) {
+                    /* 目录刚创建就被删除了 */
+                }
+            }
+        }
+        if (!key.reset()) {
+            /* 目录已经被删除 */
+            keys.remove(key);
+        }
+    }
+
+    private void record(Path path, WatchEvent.Kind<Path> kind, long now) {
+        Pending p = pending.get(path);
+        if (p == null) {
+            p = new Pending(kind, now);
+            pending.put(path, p);
+        } else {
+            p.kind = merge(p.kind, kind);
+            p.lastSeen = now;
+        }
+        p.events++;
+    }
+
+    /**
+     * 合并同一个路径上先后发生的两个事件，返回 null 表示相互抵消
+     */
+    private static WatchEvent.Kind<Path> merge(WatchEvent.Kind<Path> first, WatchEvent.Kind<Path> second) {
+        if (first == null) {
+            return second == ENTRY_DELETE ? ENTRY_DELETE : ENTRY_CREATE;
+        }
+        if (first == ENTRY_CREATE) {
+            return second == ENTRY_DELETE ? null : ENTRY_CREATE;
+        }
+        if (first == ENTRY_DELETE) {
+            return second == ENTRY_DELETE ? ENTRY_DELETE : ENTRY_MODIFY;
+        }
+        return second == ENTRY_DELETE ? ENTRY_DELETE : ENTRY_MODIFY;
+    }
+
+    /**
+     * 交付所有已经“安静”了一个窗口的变更
+     *
+     * @return 剩下的变更中最早结束的窗口的时间（System.nanoTime()），没有剩下的变更时无意义
+     */
+    private long flush(long now) {
+        List<Change> batch = new ArrayList<>();
+        long deadline = now + debounceNanos;
+        Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Pending> entry = it.next();
+            Pending p = entry.getValue();
+            if (now - p.lastSeen < debounceNanos) {
+                /* nanoTime 可能溢出，只能比较差值 */
+                if (p.lastSeen + debounceNanos - deadline < 0) {
+                    deadline = p.lastSeen + debounceNanos;
+                }
+                continue;
+            }
+            it.remove();
+            if (p.kind == null) {
+                continue;
+            }
+            batch.add(new Change(entry.getKey(), p.kind, p.events));
+            long lag = now - p.firstSeen;
+            totalLagNanos.addAndGet(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+        if (batch.isEmpty()) {
+            return deadline;
+        }
+        deliveredChanges.addAndGet(batch.size());
+        List<Change> changes = Collections.unmodifiableList(batch);
+        for (Consumer<List<Change>> subscriber : subscribers) {
+            try {
+                subscriber.accept(changes);
+            } catch (RuntimeException e) {
+                /* 不能让一个订阅者的异常终止监听线程，其他订阅者和之后的变更仍然要交付 */
+                errorHandler.accept(e);
+            }
+        }
+        return deadline;
+    }
+}
+
+/**
+ * 与 TreeWatcher 相同的场景：删除整个 test 目录树中的 .txt 文件，
+ * 这次所有子目录的删除事件都能收到，而且只用了一个线程。
+ */
+class TreeWatchServiceDemo {
+    public static void main(String[] args) throws Exception {
+        Directories.refreshTestDir();
+        Directories.populateTestDir();
+        try (TreeWatchService service = new TreeWatchService(Paths.get("test"), 100, TimeUnit.MILLISECONDS)) {
+            service.subscribe(changes -> changes.forEach(System.out::println));
+            Files.createDirectories(Paths.get("test", "new", "sub"));
+            Files.createFile(Paths.get("test", "new", "sub", "New.txt"));
+            PathWatcher.delTextFiles();
+            TimeUnit.SECONDS.sleep(1);
+            System.out.printf("交付 %d 个变更，平均延迟 %.1f ms，最大延迟 %.1f ms，OVERFLOW %d 次%n",
+                    service.deliveredCount(), service.averageLagMillis(), service.maxLagMillis(),
+                    service.overflowCount());
+        }
+    }
+}
+/* Output:（其中一种情况）
+deleting test\bag\foo\bar\baz\File.txt
+deleting test\bar\baz\bag\foo\File.txt
+deleting test\baz\bag\foo\bar\File.txt
+deleting test\foo\bar\baz\bag\File.txt
+deleting test\new\sub\New.txt
+ENTRY_CREATE test\new (1 个事件)
+ENTRY_CREATE test\new\sub (1 个事件)
+ENTRY_DELETE test\bag\foo\bar\baz\File.txt (1 个事件)
+ENTRY_DELETE test\bar\baz\bag\foo\File.txt (1 个事件)
+ENTRY_DELETE test\baz\bag\foo\bar\File.txt (1 个事件)
+ENTRY_DELETE test\foo\bar\baz\bag\File.txt (1 个事件)
+交付 6 个变更，平均延迟 ...
+
+test\new\sub\New.txt 在防抖窗口内先被创建又被删除，两个事件相互抵消，不会交给订阅者。
+ */
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+【并行目录遍历】
+part_05_文件查找 中的 Find 先用 Files.walk() 把目录树中的每个条目都生成出来，再用 PathMatcher 过滤；
+part_02_目录 中的 RmDir 也是在一个线程里逐个删除文件。
+目录树很大（比如几十万、上百万个文件）时，这两种写法都很慢：
+1. 即使某个子目录下面不可能有匹配的文件，也要把它整个遍历一遍；
+2. 列目录、读取文件属性、删除文件都是 I/O 操作，单线程时 CPU 大部分时间在等待。
+
+ParallelWalker 的做法：
+1. 遍历时就使用 PathMatcher（下推），并根据 glob 表达式开头的固定目录和层数，跳过不可能匹配的整个子目录，
+   例如 glob:test/foo/*.txt 只会进入 test/foo，而不会遍历 test 下面的其他子目录；
+   regex 无法分析，可以额外传入一个 PathMatcher 指定要跳过的目录；
+   findRelative() 用相对 root 的路径匹配（例如 glob:foo/*.txt），模式中不需要写出 root，
+   root 是临时目录等绝对路径时也能剪枝，而且不会受 Windows 路径中的 \（glob 的转义字符）和盘符影响；
+2. 每个子目录是一个 ForkJoin 任务，列目录的工作分散到 ForkJoinPool 的多个线程上；
+3. 删除时先并行删除所有子目录，再删除当前目录；统计大小时把各个子目录的结果加起来。
+
+与 Files.walk()、Files.walkFileTree() 一样，不跟随符号链接。
+ */
+class ParallelWalker {
+    private final ForkJoinPool pool;
+
+    ParallelWalker() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    ParallelWalker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 查找与 syntaxAndPattern（"glob:..." 或 "regex:..."）匹配的所有文件和目录，
+     * 与 Files.walk(root).filter(matcher::matches) 的结果相同（顺序可能不同）
+     */
+    List<Path> find(Path root, String syntaxAndPattern) throws IOException {
+        return find(root, syntaxAndPattern, null);
+    }
+
+    /**
+     * @param skipDirs 匹配的目录（及其下面的所有内容）不会被遍历，可以为 null
+     */
+    List<Path> find(Path root, String syntaxAndPattern, PathMatcher skipDirs) throws IOException {
+        return find(root, syntaxAndPattern, skipDirs, false);
+    }
+
+    /**
+     * 与 find() 相同，但 syntaxAndPattern 匹配的是相对 root 的路径（root.relativize(p)），返回的仍然是完整的路径；
+     * 结果与 Files.walk(root).filter(p -> matcher.matches(root.relativize(p))) 相同（root 本身不参与匹配）
+     */
+    List<Path> findRelative(Path root, String syntaxAndPattern) throws IOException {
+        return find(root, syntaxAndPattern, null, true);
+    }
+
+    private List<Path> find(Path root, String syntaxAndPattern, PathMatcher skipDirs, boolean relative)
+            throws IOException {
+        PathMatcher matcher = root.getFileSystem().getPathMatcher(syntaxAndPattern);
+        Pruner pruner = Pruner.of(root, syntaxAndPattern, skipDirs, relative);
+        List<Path> result = new ArrayList<>();
+        if (!relative && matcher.matches(root)) {
+            result.add(root);
+        }
+        if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS) && pruner.canDescend(root)) {
+            result.addAll(invoke(new FindTask(root, relative ? root : null, matcher, pruner)));
+        }
+        return result;
+    }
+
+    /**
+     * 目录树中所有普通文件的大小之和（字节）
+     */
+    long size(Path root) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory()) {
+            return attrs.isRegularFile() ? attrs.size() : 0;
+        }
+        return invoke(new SizeTask(root));
+    }
+
+    /**
+     * 并行删除整个目录树，相当于 RmDir.rmdir()
+     *
+     * @return 删除的文件和目录的数量
+     */
+    long delete(Path root) throws IOException {
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            Files.delete(root);
+            return 1;
+        }
+        LongAdder deleted = new LongAdder();
+        invoke(new DeleteTask(root, deleted));
+        return deleted.sum();
+    }
+
+    private <T> T invoke(ForkJoinTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 列出目录中的条目，以及是否是目录（不跟随符号链接）
+     */
+    private static void list(Path dir, List<Path> files, List<Path> dirs) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    dirs.add(entry);
+                } else {
+                    files.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 判断一个目录下面是否可能有匹配的条目
+     */
+    static final class Pruner {
+        /* glob 表达式开头不含通配符的目录，逐级匹配 */
+        private final PathMatcher[] prefix;
+        /* 匹配的路径最多有几级，含 ** 时没有限制 */
+        private final int maxNameCount;
+        private final PathMatcher skipDirs;
+        /* 相对 root 匹配时为 root 的层数，模式的第 i 级对应路径的第 offset + i 级 */
+        private final int offset;
+
+        private Pruner(PathMatcher[] prefix, int maxNameCount, PathMatcher skipDirs, int offset) {
+            this.prefix = prefix;
+            this.maxNameCount = maxNameCount;
+            this.skipDirs = skipDirs;
+            this.offset = offset;
+        }
+
+        static Pruner of(Path root, String syntaxAndPattern, PathMatcher skipDirs, boolean relative) {
+            if (!syntaxAndPattern.startsWith("glob:")) {
+                return new Pruner(new PathMatcher[0], Integer.MAX_VALUE, skipDirs, 0);
+            }
+            String pattern = syntaxAndPattern.substring("glob:".length());
+            boolean absolute = pattern.startsWith("/");
+            if (relative ? absolute : absolute != root.isAbsolute()) {
+                /* 无法与 root 的各级目录对应，不做剪枝 */
+                return new Pruner(new PathMatcher[0], Integer.MAX_VALUE, skipDirs, 0);
+            }
+            /* 空路径（Paths.get("")）的 getNameCount() 是 1 */
+            int offset = relative && !root.toString().isEmpty() ? root.getNameCount() : 0;
+            String[] segments = (absolute ? pattern.substring(1) : pattern).split("/");
+            List<PathMatcher> prefix = new ArrayList<>();
+            for (String segment : segments) {
+                if (hasWildcard(segment)) {
+                    break;
+                }
+                /* 用 glob 逐级比较，大小写规则与文件系统一致 */
+                prefix.add(root.getFileSystem().getPathMatcher("glob:" + segment));
+            }
+            /* {a,b/c} 这样的分组中可能含有 /，无法确定层数 */
+            boolean unbounded = pattern.contains("**") || pattern.contains("{") || pattern.contains("[");
+            return new Pruner(prefix.toArray(new PathMatcher[0]),
+                    unbounded ? Integer.MAX_VALUE : segments.length, skipDirs, offset);
+        }
+
+        private static boolean hasWildcard(String segment) {
+            for (int i = 0; i < segment.length(); i++) {
+                switch (segment.charAt(i)) {
+                    case '*':
+                    case '?':
+                    case '[':
+                    case '{':
+                    case '\\':
+                        return true;
+                    default:
+                }
+            }
+            return false;
+        }
+
+        boolean canDescend(Path dir) {
+            int count = dir.toString().isEmpty() ? 0 : dir.getNameCount() - offset;
+            /* 子条目比 dir 多一级 */
+            if (count + 1 > maxNameCount) {
+                return false;
+            }
+            for (int i = 0; i < Math.min(count, prefix.length); i++) {
+                if (!prefix[i].matches(dir.getName(offset + i))) {
+                    return false;
+                }
+            }
+            return skipDirs == null || !skipDirs.matches(dir);
+        }
+    }
+
+    private static final class FindTask extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        /* 相对 root 匹配时不为 null */
+        private final Path root;
+        private final PathMatcher matcher;
+        private final Pruner pruner;
+
+        FindTask(Path dir, Path root, PathMatcher matcher, Pruner pruner) {
+            this.dir = dir;
+            this.root = root;
+            this.matcher = matcher;
+            this.pruner = pruner;
+        }
+
+        private boolean matches(Path path) {
+            return matcher.matches(root == null ? path : root.relativize(path));
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> files = new ArrayList<>();
+            List<Path> dirs = new ArrayList<>();
+            list(dir, files, dirs);
+            List<FindTask> subtasks = new ArrayList<>();
+            List<Path> result = new ArrayList<>();
+            for (Path sub : dirs) {
+                if (matches(sub)) {
+                    result.add(sub);
+                }
+                if (pruner.canDescend(sub)) {
+                    FindTask task = new FindTask(sub, root, matcher, pruner);
+                    task.fork();
+                    subtasks.add(task);
+                }
+            }
+            for (Path file : files) {
+                if (matches(file)) {
+                    result.add(file);
+                }
+            }
+            for (FindTask task : subtasks) {
+                result.addAll(task.join());
+            }
+            return result;
+        }
+    }
+
+    private static final class SizeTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        SizeTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected Long compute() {
+            List<SizeTask> subtasks = new ArrayList<>();
+            long size = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    /* 一次读取所有属性，不再单独调用 isDirectory() */
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        SizeTask task = new SizeTask(entry);
+                        task.fork();
+                        subtasks.add(task);
+                    } else if (attrs.isRegularFile()) {
+                        size += attrs.size();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (SizeTask task : subtasks) {
+                size += task.join();
+            }
+            return size;
+        }
+    }
+
+    private static final class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final LongAdder deleted;
+
+        DeleteTask(Path dir, LongAdder deleted) {
+            this.dir = dir;
+            this.deleted = deleted;
+        }
+
+        @Override
+        protected void compute() {
+            List<Path> files = new ArrayList<>();
+            List<Path> dirs = new ArrayList<>();
+            list(dir, files, dirs);
+            List<DeleteTask> subtasks = new ArrayList<>();
+            for (Path sub : dirs) {
+                subtasks.add(new DeleteTask(sub, deleted));
+            }
+            invokeAll(subtasks);
+            try {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+                /* 所有子目录都删除完了，才能删除当前目录 */
+                Files.delete(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            deleted.add(files.size() + 1);
+        }
+    }
+}
+
+/**
+ * 与 Find 相同的查找，使用 ParallelWalker
+ */
+class ParallelFind {
+    public static void main(String[] args) throws IOException {
+        Path test = Paths.get("test");
+        Directories.refreshTestDir();
+        Directories.populateTestDir();
+        Files.createDirectory(test.resolve("dir.temp"));
+
+        ParallelWalker walker = new ParallelWalker();
+        walker.find(test, "glob:**/*.{temp,txt}").forEach(System.out::println);
+        System.out.println("-- -- -- -- -- --");
+        /* 只会进入 test/foo，最多遍历 4 层 */
+        walker.find(test, "glob:test/foo/*/*/*/*.txt").forEach(System.out::println);
+        System.out.println("-- -- -- -- -- --");
+        System.out.println("size: " + walker.size(test));
+        System.out.println("deleted: " + walker.delete(test));
+    }
+}
+/* Output:（遍历顺序可能不同）
+test\dir.temp
+test\bag\foo\bar\baz\File.txt
+test\bar\baz\bag\foo\File.txt
+test\baz\bag\foo\bar\File.txt
+test\foo\bar\baz\bag\File.txt
+-- -- -- -- -- --
+test\foo\bar\baz\bag\File.txt
+-- -- -- -- -- --
+size: 16420
+deleted: 26
+ */
+
+/**
+ * 在一个人工生成的目录树上比较串行和并行的查找、统计大小、删除
+ * <p>
+ * 参数：文件总数（默认 1,000,000）、每个目录的文件数（默认 100）、轮数（默认 3）
+ * <p>
+ * 目录结构：root/dN/dM/fK.txt 或 fK.dat，第一层 10 个目录；
+ * 模式相对 root 匹配（findRelative()），查找 glob:d0/**&#47;*.txt 时 ParallelWalker 只需要进入 d0，也就是大约 1/10 的目录；
+ * 不把 root 拼进 glob，因为 Windows 路径中的 \ 在 glob 中是转义字符。
+ */
+class ParallelWalkerBenchmark {
+    public static void main(String[] args) throws IOException {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int filesPerDir = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path root = Files.createTempDirectory("walker");
+        ParallelWalker walker = new ParallelWalker();
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            populate(root, fileCount, filesPerDir);
+            report("populate", start, fileCount);
+
+            /* 相对 root 的 glob */
+            for (String label : new String[] {"**/*.txt", "d0/**/*.txt"}) {
+                String pattern = "glob:" + label;
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher(pattern);
+                start = System.nanoTime();
+                long serial;
+                try (Stream<Path> stream = Files.walk(root)) {
+                    serial = stream.filter(p -> matcher.matches(root.relativize(p))).count();
+                }
+                report("Files.walk + filter    " + label, start, serial);
+                start = System.nanoTime();
+                report("ParallelWalker.find    " + label, start, walker.findRelative(root, pattern).size());
+            }
+
+            start = System.nanoTime();
+            long[] serialSize = {0};
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    serialSize[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            report("walkFileTree size", start, serialSize[0]);
+            start = System.nanoTime();
+            report("ParallelWalker.size", start, walker.size(root));
+
+            /* 串行和并行删除各删除一半 */
+            start = System.nanoTime();
+            for (int d = 0; d < 5; d++) {
+                if (Files.exists(root.resolve("d" + d))) {
+                    RmDir.rmdir(root.resolve("d" + d));
+                }
+            }
+            report("RmDir.rmdir            d0..d4", start, 0);
+            start = System.nanoTime();
+            long deleted = 0;
+            for (int d = 5; d < 10; d++) {
+                if (Files.exists(root.resolve("d" + d))) {
+                    deleted += walker.delete(root.resolve("d" + d));
+                }
+            }
+            report("ParallelWalker.delete  d5..d9", start, deleted);
+        }
+        Files.delete(root);
+    }
+
+    private static void populate(Path root, int fileCount, int filesPerDir) throws IOException {
+        byte[] content = new byte[16];
+        int dirs = Math.max(1, fileCount / filesPerDir);
+        for (int d = 0; d < dirs; d++) {
+            Path dir = root.resolve("d" + (d % 10)).resolve("d" + d);
+            Files.createDirectories(dir);
+            for (int f = 0; f < filesPerDir && d * filesPerDir + f < fileCount; f++) {
+                Files.write(dir.resolve("f" + f + (f % 2 == 0 ? ".txt" : ".dat")), content);
+            }
+        }
+    }
+
+    private static void report(String name, long start, long result) {
+        System.out.printf("  %-40s %8.1f ms  (%d)%n", name, (System.nanoTime() - start) / 1e6, result);
+    }
+}
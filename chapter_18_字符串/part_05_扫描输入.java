@@ -91,6 +91,7 @@ class ScannerDelimiter {
 /**
  * 【用正则表达式扫描】
  * 针对扫描复杂数据时，可以使用自定义的正则表达式进行扫描
+ * NOTE：每一行都要匹配正则并创建 MatchResult 和 String；格式固定的大量日志，见 part_09_编译的日志解析器 中的 LogLayout
  */
 class ThreatAnalyzer {
     static String threatData =
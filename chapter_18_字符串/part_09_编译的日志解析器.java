@@ -0,0 +1,516 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/*
+【编译的日志解析器】
+part_05 中的 ThreatAnalyzer 用 Scanner.hasNext(pattern)/next(pattern)/match() 解析 “ip@date” 格式的记录，
+每一行都要做一次正则匹配，再为 MatchResult 和每一组创建对象和 String，之后还要把 String 转换成数值；
+而且 Scanner 只能在一个线程中顺序读取。
+
+日志的格式通常是固定的，可以事先把它“编译”一次：
+1. LogLayout.compile("{ipv4}@{date:MM/dd/yyyy}") 把格式转换成一个简单的指令数组（字面字符、IPv4、整数、年月日）；
+2. parse() 直接在 byte[] 上按指令逐个字节地扫描，结果是基本类型：IPv4 地址为 int，日期为 epoch day（LocalDate.toEpochDay()）；
+3. 结果写入可以重复使用的 LogRecord 中，解析一行不创建任何对象；
+4. parallel() 在换行符处把输入切成若干块，每块使用自己的 LogRecord 和累加器并行解析，最后合并。
+
+支持的字段：
+{ipv4}                  点分十进制的 IPv4 地址，每段 1~3 位数字、不大于 255
+{int}                   可以带负号的十进制整数
+{date:格式}             格式由 yyyy、MM、dd 和字面字符组成（位数固定），省略格式时为 MM/dd/yyyy
+ */
+final class LogLayout {
+    private static final int LITERAL = 0, IPV4 = 1, INT = 2, YEAR = 3, MONTH = 4, DAY = 5, DATE = 6;
+
+    private final String layout;
+    /* 每条指令两个 int：操作码、参数（字面字节或字段下标） */
+    private final int[] ops;
+    private final int fields;
+
+    private LogLayout(String layout, int[] ops, int fields) {
+        this.layout = layout;
+        this.ops = ops;
+        this.fields = fields;
+    }
+
+    /**
+     * @throws IllegalArgumentException 格式不正确，或者包含非 ASCII 字符
+     */
+    public static LogLayout compile(String layout) {
+        List<Integer> ops = new ArrayList<>();
+        int fields = 0;
+        for (int i = 0; i < layout.length(); i++) {
+            char c = layout.charAt(i);
+            if (c != '{') {
+                literal(ops, layout, c);
+                continue;
+            }
+            int close = layout.indexOf('}', i);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed field at " + i + ": " + layout);
+            }
+            String field = layout.substring(i + 1, close);
+            int colon = field.indexOf(':');
+            String type = colon < 0 ? field : field.substring(0, colon);
+            switch (type) {
+                case "ipv4":
+                    add(ops, IPV4, fields++);
+                    break;
+                case "int":
+                    add(ops, INT, fields++);
+                    break;
+                case "date":
+                    date(ops, layout, colon < 0 ? "MM/dd/yyyy" : field.substring(colon + 1));
+                    add(ops, DATE, fields++);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field {" + field + "}: " + layout);
+            }
+            if (colon >= 0 && !type.equals("date")) {
+                throw new IllegalArgumentException("{" + type + "} takes no format: " + layout);
+            }
+            i = close;
+        }
+        int[] result = new int[ops.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ops.get(i);
+        }
+        return new LogLayout(layout, result, fields);
+    }
+
+    private static void date(List<Integer> ops, String layout, String format) {
+        boolean year = false, month = false, day = false;
+        for (int i = 0; i < format.length(); i++) {
+            if (format.startsWith("yyyy", i) && !year) {
+                add(ops, YEAR, 0);
+                year = true;
+                i += 3;
+            } else if (format.startsWith("MM", i) && !month) {
+                add(ops, MONTH, 0);
+                month = true;
+                i++;
+            } else if (format.startsWith("dd", i) && !day) {
+                add(ops, DAY, 0);
+                day = true;
+                i++;
+            } else {
+                literal(ops, layout, format.charAt(i));
+            }
+        }
+        if (!year || !month || !day) {
+            throw new IllegalArgumentException("Date format needs yyyy, MM and dd: " + layout);
+        }
+    }
+
+    private static void literal(List<Integer> ops, String layout, char c) {
+        if (c > 0x7F || c == '\n') {
+            throw new IllegalArgumentException("Unsupported character '" + c + "': " + layout);
+        }
+        add(ops, LITERAL, c);
+    }
+
+    private static void add(List<Integer> ops, int op, int arg) {
+        ops.add(op);
+        ops.add(arg);
+    }
+
+    public int fields() {
+        return fields;
+    }
+
+    public LogRecord newRecord() {
+        return new LogRecord(fields);
+    }
+
+    /**
+     * 解析 [from, to) 中的一行（不含换行符），整行都符合格式时把各个字段写入 record 并返回 true
+     */
+    public boolean parse(byte[] b, int from, int to, LogRecord record) {
+        int p = from;
+        int year = 0, month = 0, day = 0;
+        int[] values = record.values;
+        for (int i = 0; i < ops.length; i += 2) {
+            int arg = ops[i + 1];
+            switch (ops[i]) {
+                case LITERAL:
+                    if (p >= to || b[p] != arg) {
+                        return false;
+                    }
+                    p++;
+                    break;
+                case IPV4: {
+                    int ip = 0;
+                    for (int part = 0; part < 4; part++) {
+                        if (part > 0) {
+                            if (p >= to || b[p] != '.') {
+                                return false;
+                            }
+                            p++;
+                        }
+                        int start = p, v = 0, d;
+                        while (p < to && p - start < 3 && (d = b[p] - '0') >= 0 && d <= 9) {
+                            v = v * 10 + d;
+                            p++;
+                        }
+                        if (p == start || v > 255) {
+                            return false;
+                        }
+                        ip = ip << 8 | v;
+                    }
+                    values[arg] = ip;
+                    break;
+                }
+                case INT: {
+                    boolean negative = p < to && b[p] == '-';
+                    if (negative) {
+                        p++;
+                    }
+                    int start = p, d;
+                    long v = 0;
+                    while (p < to && (d = b[p] - '0') >= 0 && d <= 9) {
+                        v = v * 10 + d;
+                        if (v > Integer.MAX_VALUE + 1L) {
+                            return false;
+                        }
+                        p++;
+                    }
+                    if (p == start || (!negative && v > Integer.MAX_VALUE)) {
+                        return false;
+                    }
+                    values[arg] = (int) (negative ? -v : v);
+                    break;
+                }
+                case YEAR:
+                    if ((year = digits(b, p, to, 4)) < 0) {
+                        return false;
+                    }
+                    p += 4;
+                    break;
+                case MONTH:
+                    if ((month = digits(b, p, to, 2)) < 0) {
+                        return false;
+                    }
+                    p += 2;
+                    break;
+                case DAY:
+                    if ((day = digits(b, p, to, 2)) < 0) {
+                        return false;
+                    }
+                    p += 2;
+                    break;
+                case DATE:
+                    if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+                        return false;
+                    }
+                    values[arg] = epochDay(year, month, day);
+                    break;
+                default:
+                    throw new AssertionError(ops[i]);
+            }
+        }
+        if (p != to) {
+            return false;
+        }
+        record.start = from;
+        record.end = to;
+        return true;
+    }
+
+    /**
+     * 按行解析 [from, to)，每个符合格式的行都写入同一个 record 再交给 action（不能保存 record 的引用），
+     * 跳过空行（以及行尾的 '\r'），返回不符合格式的行数
+     */
+    public int forEach(byte[] data, int from, int to, LogRecord record, Consumer<? super LogRecord> action) {
+        int malformed = 0;
+        for (int p = from; p < to; ) {
+            int end = p;
+            while (end < to && data[end] != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > p && data[end - 1] == '\r') {
+                end--;
+            }
+            if (end > p) {
+                if (parse(data, p, end, record)) {
+                    action.accept(record);
+                } else {
+                    malformed++;
+                }
+            }
+            p = next;
+        }
+        return malformed;
+    }
+
+    /**
+     * 把 data 在换行符处切成 chunks 块并行解析，每块有自己的 LogRecord 和累加器，
+     * 与 Stream.collect() 相同，最后按顺序用 combiner 合并；不符合格式的行被跳过
+     */
+    public <A> A parallel(byte[] data, int chunks, Supplier<A> supplier,
+                          BiConsumer<A, ? super LogRecord> accumulator, BinaryOperator<A> combiner) {
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = data.length;
+        for (int i = 1; i < chunks; i++) {
+            int p = Math.max(bounds[i - 1], (int) ((long) data.length * i / chunks));
+            while (p < data.length && p > 0 && data[p - 1] != '\n') {
+                p++;
+            }
+            bounds[i] = p;
+        }
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> {
+                    A container = supplier.get();
+                    forEach(data, bounds[i], bounds[i + 1], newRecord(),
+                            record -> accumulator.accept(container, record));
+                    return container;
+                })
+                .reduce(combiner)
+                .orElseGet(supplier);
+    }
+
+    /* 固定 n 位数字，否则返回 -1 */
+    private static int digits(byte[] b, int p, int to, int n) {
+        if (to - p < n) {
+            return -1;
+        }
+        int v = 0;
+        for (int end = p + n; p < end; p++) {
+            int d = b[p] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return 30 + ((month + (month >> 3)) & 1);
+    }
+
+    /**
+     * 与 LocalDate.of(year, month, day).toEpochDay() 相同，但不创建对象
+     */
+    static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    @Override
+    public String toString() {
+        return layout;
+    }
+}
+
+/**
+ * 一行的解析结果，字段按在格式中出现的顺序编号
+ */
+final class LogRecord {
+    final int[] values;
+    /* 这一行在输入中的位置 [start, end) */
+    int start, end;
+
+    LogRecord(int fields) {
+        values = new int[fields];
+    }
+
+    public int get(int field) {
+        return values[field];
+    }
+
+    public LocalDate date(int field) {
+        return LocalDate.ofEpochDay(values[field]);
+    }
+
+    public static String ipv4(int ip) {
+        return (ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF);
+    }
+}
+
+/**
+ * 用 LogLayout 完成 ThreatAnalyzer 的工作，并且并行地统计每个 IP 的记录数
+ */
+class ThreatAnalyzer2 {
+    public static void main(String[] args) {
+        byte[] data = ThreatAnalyzer.threatData.getBytes(StandardCharsets.US_ASCII);
+        LogLayout layout = LogLayout.compile("{ipv4}@{date:MM/dd/yyyy}");
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+        int malformed = layout.forEach(data, 0, data.length, layout.newRecord(), record ->
+                System.out.format("Threat on %s from %s%n",
+                        record.date(1).format(format), LogRecord.ipv4(record.get(0))));
+        System.out.println("malformed: " + malformed);
+
+        Map<Integer, Integer> counts = layout.parallel(data, 3, HashMap::new,
+                (map, record) -> map.merge(record.get(0), 1, Integer::sum),
+                (a, b) -> {
+                    b.forEach((ip, n) -> a.merge(ip, n, Integer::sum));
+                    return a;
+                });
+        Map<String, Integer> sorted = new TreeMap<>();
+        counts.forEach((ip, n) -> sorted.put(LogRecord.ipv4(ip), n));
+        System.out.println(sorted);
+    }
+}
+/* Output:
+Threat on 08/10/2015 from 58.27.82.161
+Threat on 08/11/2015 from 204.45.234.40
+Threat on 08/11/2015 from 58.27.82.161
+Threat on 08/12/2015 from 58.27.82.161
+Threat on 08/12/2015 from 58.27.82.161
+malformed: 1
+{204.45.234.40=1, 58.27.82.161=4}
+ */
+
+/**
+ * 比较 ReplacingStringTokenizer 中的几种分词方式与 LogLayout 解析 “ip@date” 的速度（每行的纳秒数）。
+ * 参数：行数(默认 1_000_000)、轮数(默认 5)；
+ * 每种方式都把一行转换成 IPv4 的 int 和 epoch day，再累加成校验和：
+ * 1. Scanner：ThreatAnalyzer 的做法，hasNext(pattern)/next(pattern)/match()；
+ * 2. Pattern.matcher()：BufferedReader 逐行读取，复用同一个 Matcher；
+ * 3. StringTokenizer：BufferedReader 逐行读取，以 ".@/" 分词；
+ * 4. LogLayout.forEach()；
+ * 5. LogLayout.parallel()，每个处理器 4 块。
+ * 前三种的输入是 String，后两种是 byte[]，String.getBytes() 不计入时间。
+ */
+class LogParserBenchmark {
+    static final String PATTERN = "(\\d+[.]\\d+[.]\\d+[.]\\d+)@(\\d{2}/\\d{2}/\\d{4})";
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random random = new Random(47);
+        StringBuilder sb = new StringBuilder(size * 24);
+        for (int i = 0; i < size; i++) {
+            LocalDate date = LocalDate.ofEpochDay(16_000 + random.nextInt(2000));
+            sb.append(random.nextInt(256)).append('.').append(random.nextInt(256)).append('.')
+                    .append(random.nextInt(256)).append('.').append(random.nextInt(256)).append('@')
+                    .append(String.format("%02d/%02d/%04d%n",
+                            date.getMonthValue(), date.getDayOfMonth(), date.getYear()));
+        }
+        String text = sb.toString();
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        LogLayout layout = LogLayout.compile("{ipv4}@{date:MM/dd/yyyy}");
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            long expected = scanner(text);
+            report("Scanner", start, size, expected);
+
+            start = System.nanoTime();
+            check(expected, report("Pattern.matcher()", start, size, matcher(text)));
+
+            start = System.nanoTime();
+            check(expected, report("StringTokenizer", start, size, tokenizer(text)));
+
+            start = System.nanoTime();
+            long[] sum = new long[1];
+            layout.forEach(data, 0, data.length, layout.newRecord(), r -> sum[0] += checksum(r.get(0), r.get(1)));
+            check(expected, report("LogLayout.forEach()", start, size, sum[0]));
+
+            start = System.nanoTime();
+            long parallel = layout.parallel(data, chunks, () -> new long[1],
+                    (s, r) -> s[0] += checksum(r.get(0), r.get(1)),
+                    (a, b) -> {
+                        a[0] += b[0];
+                        return a;
+                    })[0];
+            check(expected, report("LogLayout.parallel()", start, size, parallel));
+        }
+    }
+
+    private static long scanner(String text) {
+        Scanner scanner = new Scanner(text);
+        long sum = 0;
+        while (scanner.hasNext(PATTERN)) {
+            scanner.next(PATTERN);
+            MatchResult match = scanner.match();
+            sum += checksum(ipv4(match.group(1)), epochDay(match.group(2)));
+        }
+        return sum;
+    }
+
+    private static long matcher(String text) throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader(text));
+        Matcher matcher = Pattern.compile(PATTERN).matcher("");
+        long sum = 0;
+        for (String line; (line = in.readLine()) != null; ) {
+            if (matcher.reset(line).matches()) {
+                sum += checksum(ipv4(matcher.group(1)), epochDay(matcher.group(2)));
+            }
+        }
+        return sum;
+    }
+
+    private static long tokenizer(String text) throws IOException {
+        BufferedReader in = new BufferedReader(new StringReader(text));
+        long sum = 0;
+        for (String line; (line = in.readLine()) != null; ) {
+            StringTokenizer tokens = new StringTokenizer(line, ".@/");
+            int ip = 0;
+            for (int i = 0; i < 4; i++) {
+                ip = ip << 8 | Integer.parseInt(tokens.nextToken());
+            }
+            int month = Integer.parseInt(tokens.nextToken());
+            int day = Integer.parseInt(tokens.nextToken());
+            int year = Integer.parseInt(tokens.nextToken());
+            sum += checksum(ip, LogLayout.epochDay(year, month, day));
+        }
+        return sum;
+    }
+
+    private static int ipv4(String ip) {
+        int result = 0;
+        for (String part : ip.split("\\.")) {
+            result = result << 8 | Integer.parseInt(part);
+        }
+        return result;
+    }
+
+    private static int epochDay(String date) {
+        return LogLayout.epochDay(Integer.parseInt(date.substring(6, 10)),
+                Integer.parseInt(date.substring(0, 2)), Integer.parseInt(date.substring(3, 5)));
+    }
+
+    private static long checksum(int ip, int epochDay) {
+        return (ip & 0xFFFFFFFFL) * 31 + epochDay;
+    }
+
+    private static void check(long expected, long actual) {
+        if (actual != expected) {
+            throw new AssertionError(actual + " != " + expected);
+        }
+    }
+
+    private static long report(String name, long start, int size, long result) {
+        System.out.printf("  %-24s %8.1f ns  (%d)%n", name, (double) (System.nanoTime() - start) / size, result);
+        return result;
+    }
+}
@@ -350,6 +350,8 @@ class PetCount3 {
  * 【递归计数】
  * 上述代码预先加载了所有不同的 Pet 类。
  * 现在使用 Class.isAssignableFrom() 创建一个不限于计数 Pet 的通用工具。
+ * NOTE：每个对象都要递归地 getSuperclass() 并装箱 get()/put()，且不是线程安全的；
+ * 用 ClassValue 缓存每个类的基类、LongAdder 计数的版本见 part_10_类型直方图 中的 TypeHistogram
  */
 class TypeCounter extends HashMap<Class<?>, Integer> {
     private Class<?> baseType;
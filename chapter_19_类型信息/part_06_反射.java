@@ -57,6 +57,8 @@ get() 和 set() 方法读取和修改与 Field 对象关联的字段，invoke()
 /**
  * 【类方法提取器】
  * 考虑一个方法提取器，展示一个类的所有方法，甚至包括定义在基类中方法
+ * NOTE：按类缓存方法、构造器和字段（ClassValue + MethodHandle）的版本，
+ * 见 language 模块中的 reflection.ClassMetadata
  */
 class ShowMethods {
     private final static Pattern p = Pattern.compile("\\w+\\.");
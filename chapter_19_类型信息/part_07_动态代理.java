@@ -125,6 +125,9 @@ class SimpleDynamicProxy {
 /**
  * 在 DynamicProxyHandler 中，可过选择性地过滤掉一些方法的调用。
  * 改造如下：
+ * NOTE：每次调用都要把参数装箱成 Object[]、通过 Method.invoke() 调用，还要比较方法名；
+ * 在编译时生成代理类、用类型化的 beforeInteresting(String arg) 之类的 Hooks 代替的做法，
+ * 见 language 模块 reflection.proxy 中的 GenerateProxy 与 ProxyProcessor
  */
 class MethodSelector implements InvocationHandler {
     private Object proxied;
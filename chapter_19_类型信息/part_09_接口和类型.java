@@ -197,6 +197,8 @@ class WithPrivateFinalField {
 
 /**
  * 下面有一个很有意思的地方：对于修改 final 数据而言...
+ * NOTE：每次使用都 getDeclaredField() + setAccessible() 代价很高，
+ * 热点代码中应该只解析一次，见 language 模块中的 reflection.ClassMetadata.FieldAccessor
  */
 class ModifyingPrivateFields {
     public static void main(String[] args) throws NoSuchFieldException, IllegalAccessException {
@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+【类型直方图】
+part_03 中的两种计数方式，每计数一个对象都要做很多重复的工作：
+1. PetCount3.Counter.count()：对每一个登记的类型调用一次 isInstance()，并且还要通过 Stream 遍历 entrySet()；
+2. TypeCounter.countClass()：递归地调用 getSuperclass()、isAssignableFrom()，每一层都要做一次装箱的 HashMap get()/put()。
+而且它们都不是线程安全的。
+
+一个对象的具体类一旦确定，它需要计数的类型（自身以及所有属于 baseType 的基类）也就确定了。
+TypeHistogram：
+1. 每个类型登记时分配一个连续的整数 id（dense type id），计数保存在以 id 为下标的 LongAdder 数组中；
+2. 每个具体类需要计数的所有类型的 id，第一次遇到这个类时计算一次，用 ClassValue 缓存起来，
+   之后 count() 只是一次 ClassValue.get() 加上几次 LongAdder.increment()，可以被多个线程同时调用；
+3. 单个线程大量计数时，可以用 local() 得到一个不加锁的 long[] 计数器，最后再 flush() 合并到直方图中；
+4. snapshot() 返回与 TypeCounter 相同的 Map<Class<?>, Integer> 视图。
+ */
+class TypeHistogram {
+    private static final int[] NOT_SUBTYPE = new int[0];
+
+    private final Class<?> baseType;
+    private final Map<Class<?>, Integer> ids = new HashMap<>();
+    private final List<Class<?>> types = new ArrayList<>();
+    private volatile LongAdder[] counts = new LongAdder[0];
+
+    /* 具体类 -> 需要计数的类型 id，从 baseType 到具体类 */
+    private final ClassValue<int[]> ancestors = new ClassValue<int[]>() {
+        @Override
+        protected int[] computeValue(Class<?> type) {
+            if (!baseType.isAssignableFrom(type)) {
+                return NOT_SUBTYPE;
+            }
+            List<Class<?>> chain = new ArrayList<>();
+            for (Class<?> c = type; c != null && baseType.isAssignableFrom(c); c = c.getSuperclass()) {
+                chain.add(c);
+            }
+            int[] result = new int[chain.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = register(chain.get(result.length - 1 - i));
+            }
+            return result;
+        }
+    };
+
+    TypeHistogram(Class<?> baseType) {
+        this.baseType = baseType;
+    }
+
+    /**
+     * 预先登记类型，这样 snapshot() 中也会包含计数为 0 的类型（与 PetCount3.Counter 一样）
+     */
+    public void register(Iterable<? extends Class<?>> types) {
+        for (Class<?> type : types) {
+            ancestors.get(type);
+        }
+    }
+
+    public void count(Object obj) {
+        int[] path = path(obj);
+        LongAdder[] c = counts;
+        for (int id : path) {
+            c[id].increment();
+        }
+    }
+
+    public long get(Class<?> type) {
+        Integer id;
+        synchronized (this) {
+            id = ids.get(type);
+        }
+        return id == null ? 0 : counts[id].sum();
+    }
+
+    /**
+     * 按类型登记的顺序（基类在前）返回每个类型的计数，计数超过 Integer.MAX_VALUE 时抛出 ArithmeticException
+     */
+    public Map<Class<?>, Integer> snapshot() {
+        Class<?>[] registered;
+        synchronized (this) {
+            registered = types.toArray(new Class<?>[0]);
+        }
+        LongAdder[] c = counts;
+        Map<Class<?>, Integer> result = new LinkedHashMap<>();
+        for (int id = 0; id < registered.length; id++) {
+            result.put(registered[id], Math.toIntExact(c[id].sum()));
+        }
+        return result;
+    }
+
+    /**
+     * 只能在一个线程中使用的计数器
+     */
+    public Local local() {
+        return new Local();
+    }
+
+    class Local {
+        private long[] slots = new long[counts.length];
+
+        public void count(Object obj) {
+            int[] path = path(obj);
+            /* 基类总是先于子类登记，所以具体类的 id 最大 */
+            int last = path[path.length - 1];
+            if (last >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(last + 1, slots.length * 2));
+            }
+            for (int id : path) {
+                slots[id]++;
+            }
+        }
+
+        /**
+         * 把计数合并到直方图中并清零
+         */
+        public void flush() {
+            LongAdder[] c = counts;
+            for (int id = 0; id < slots.length; id++) {
+                if (slots[id] != 0) {
+                    c[id].add(slots[id]);
+                    slots[id] = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        String result = snapshot().entrySet().stream()
+                .map(pair -> String.format("%s=%s",
+                        pair.getKey().getSimpleName(),
+                        pair.getValue()))
+                .collect(Collectors.joining(", "));
+        return "{" + result + "}";
+    }
+
+    /* 返回的 id 都小于 counts.length：登记时先扩展 counts，再发布 id */
+    private int[] path(Object obj) {
+        Class<?> type = obj.getClass();
+        int[] path = ancestors.get(type);
+        if (path == NOT_SUBTYPE) {
+            throw new RuntimeException(
+                    obj + " incorrect type: " + type +
+                    ", should be type or subtype of " + baseType);
+        }
+        return path;
+    }
+
+    private synchronized int register(Class<?> type) {
+        Integer id = ids.get(type);
+        if (id == null) {
+            id = types.size();
+            LongAdder[] grown = Arrays.copyOf(counts, id + 1);
+            grown[id] = new LongAdder();
+            counts = grown;
+            types.add(type);
+            ids.put(type, id);
+        }
+        return id;
+    }
+}
+
+/**
+ * 与 PetCount3、PetCount4 相同的计数，以及多个线程同时计数
+ */
+class PetCount5 {
+    public static void main(String[] args) {
+        TypeHistogram histogram = new TypeHistogram(Pet.class);
+        histogram.register(LiteralPetCreator.ALL_TYPES);
+        TypeCounter counter = new TypeCounter(Pet.class);
+        Pets.stream()
+                .limit(20)
+                .peek(histogram::count)
+                .peek(counter::count)
+                .forEach(p -> System.out.print(p.getClass().getSimpleName() + " "));
+        System.out.println();
+        System.out.println(histogram);
+        System.out.println(counter);
+
+        Pet[] pets = Pets.array(100_000);
+        TypeHistogram parallel = new TypeHistogram(Pet.class);
+        Arrays.stream(pets).parallel().forEach(parallel::count);
+        TypeCounter sequential = new TypeCounter(Pet.class);
+        Arrays.stream(pets).forEach(sequential::count);
+        System.out.println(parallel.snapshot().equals(sequential));
+        try {
+            parallel.count(new Person("Bob"));
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
+/* Output:
+Cymric Cymric Manx Cymric Manx Cymric Manx Cymric EgyptianMau Manx EgyptianMau EgyptianMau EgyptianMau Manx Cymric Manx Manx Manx Cymric Manx 
+{Pet=20, Dog=0, Mutt=0, Pug=0, Cat=20, EgyptianMau=4, Manx=16, Cymric=7}
+{Cat=20, Cymric=7, EgyptianMau=4, Pet=20, Manx=16}
+true
+Individual{className='Person' incorrect type: class Person, should be type or subtype of class Pet
+ */
+
+/**
+ * 比较 PetCount3.Counter、TypeCounter 与 TypeHistogram 的计数速度（每个对象的纳秒数）。
+ * 参数：对象个数(默认 1_000_000)、轮数(默认 5)；
+ * 并行计数的两种方式：所有线程共享 LongAdder，以及每个线程一个 Local 计数器、最后 flush()。
+ */
+class TypeHistogramBenchmark {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Pet[] pets = Pets.array(size);
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            PetCount3.Counter petCount3 = new PetCount3.Counter();
+            for (Pet pet : pets) {
+                petCount3.count(pet);
+            }
+            report("PetCount3.Counter", start, size, petCount3.get(Pet.class));
+
+            start = System.nanoTime();
+            TypeCounter typeCounter = new TypeCounter(Pet.class);
+            for (Pet pet : pets) {
+                typeCounter.count(pet);
+            }
+            report("TypeCounter", start, size, typeCounter.get(Pet.class));
+
+            start = System.nanoTime();
+            TypeHistogram histogram = new TypeHistogram(Pet.class);
+            for (Pet pet : pets) {
+                histogram.count(pet);
+            }
+            report("TypeHistogram", start, size, histogram.get(Pet.class));
+
+            start = System.nanoTime();
+            TypeHistogram local = new TypeHistogram(Pet.class);
+            TypeHistogram.Local counter = local.local();
+            for (Pet pet : pets) {
+                counter.count(pet);
+            }
+            counter.flush();
+            report("TypeHistogram.Local", start, size, local.get(Pet.class));
+
+            start = System.nanoTime();
+            TypeHistogram shared = new TypeHistogram(Pet.class);
+            IntStream.range(0, size).parallel().forEach(i -> shared.count(pets[i]));
+            report("TypeHistogram, parallel", start, size, shared.get(Pet.class));
+
+            start = System.nanoTime();
+            TypeHistogram perThread = new TypeHistogram(Pet.class);
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                TypeHistogram.Local l = perThread.local();
+                for (int i = chunk; i < size; i += chunks) {
+                    l.count(pets[i]);
+                }
+                l.flush();
+            });
+            report("TypeHistogram.Local, parallel", start, size, perThread.get(Pet.class));
+            if (!perThread.snapshot().equals(typeCounter) || !shared.snapshot().equals(typeCounter)) {
+                throw new AssertionError("count mismatch");
+            }
+        }
+    }
+
+    private static void report(String name, long start, int size, long result) {
+        System.out.printf("  %-32s %7.2f ns  (%d)%n", name, (double) (System.nanoTime() - start) / size, result);
+    }
+}
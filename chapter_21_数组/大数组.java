@@ -0,0 +1,363 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/*
+【大数组】
+数组并行 中的两个问题：
+1. CountUpward.fillCounted(Integer.MAX_VALUE) 会 OutOfMemoryError，而且 Java 数组的下标是 int，最多只能有 2^31 - 1 个元素；
+2. ParallelSetAll 中 Arrays.parallelSetAll(ia, new Rand.Pint()::get) 的所有线程共用同一个 SplittableRandom，
+   SplittableRandom 不是线程安全的，多个线程同时修改它的内部状态，生成的结果既不可重复，也不再“随机”。
+   （如果换成线程安全的 java.util.Random，所有线程又会在同一个 AtomicLong 种子上竞争，并行反而更慢。）
+
+LargeLongArray：
+1. 下标是 long，数据保存在若干个直接缓冲区（ByteBuffer.allocateDirect()）中，每段默认 2^24 个 long（128 MB），
+   不占用 Java 堆，元素个数不受 2^31 的限制（受 -XX:MaxDirectMemorySize 限制）；
+2. 并行操作按块（chunk，2^20 个元素）划分，每块只属于一个分段：
+   - parallelFillRandom()：先按块的顺序从同一个种子 split() 出每一块自己的 SplittableRandom，
+     各块互不共享，结果只取决于种子，与线程数、执行顺序无关；
+   - parallelPrefix()：先并行计算每一块内的前缀，再顺序计算各块的偏移量，最后并行地把偏移量合并进每一块，
+     与 Arrays.parallelPrefix() 一样，要求 op 满足结合律；
+   - parallelSort()：先并行排序每一块，再逐层两两归并，归并时需要一个同样大小的临时 LargeLongArray。
+
+NOTE：Java 8 中没有释放直接缓冲区的公开方法，close() 之后内存要等到垃圾收集时才会真正释放。
+ */
+class LargeLongArray implements AutoCloseable {
+    static final int DEFAULT_SEGMENT_SHIFT = 24;
+    static final int MAX_CHUNK_SHIFT = 20;
+
+    private final long length;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final int chunkShift;
+    private LongBuffer[] segments;
+
+    LargeLongArray(long length) {
+        this(length, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift 每段 2^segmentShift 个元素，最多 2^27（1 GB）
+     */
+    LargeLongArray(long length, int segmentShift) {
+        if (length < 0 || segmentShift < 1 || segmentShift > 27) {
+            throw new IllegalArgumentException("length: " + length + ", segmentShift: " + segmentShift);
+        }
+        this.length = length;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.chunkShift = Math.min(MAX_CHUNK_SHIFT, segmentShift);
+        long count = (length + segmentMask) >>> segmentShift;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many segments: " + count);
+        }
+        segments = new LongBuffer[(int) count];
+        for (int i = 0; i < segments.length; i++) {
+            long size = Math.min(1L << segmentShift, length - ((long) i << segmentShift));
+            segments[i] = ByteBuffer.allocateDirect((int) size * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    long get(long index) {
+        checkIndex(index);
+        return segments[(int) (index >>> segmentShift)].get((int) (index & segmentMask));
+    }
+
+    void set(long index, long value) {
+        checkIndex(index);
+        segments[(int) (index >>> segmentShift)].put((int) (index & segmentMask), value);
+    }
+
+    LongStream stream() {
+        return LongStream.range(0, length).map(this::get);
+    }
+
+    /**
+     * 相当于 Arrays.parallelSetAll(long[], IntToLongFunction)，但下标是 long
+     */
+    void parallelSetAll(LongUnaryOperator generator) {
+        chunks().forEach(c -> {
+            LongBuffer segment = segmentOf(c);
+            int offset = offsetOf(c);
+            long first = (long) c << chunkShift;
+            int n = lengthOf(c);
+            for (int i = 0; i < n; i++) {
+                segment.put(offset + i, generator.applyAsLong(first + i));
+            }
+        });
+    }
+
+    /**
+     * 用 [0, bound) 中的随机数填充，相同的种子总是得到相同的结果
+     */
+    void parallelFillRandom(long seed, long bound) {
+        SplittableRandom[] randoms = splitRandoms(seed, chunkCount());
+        chunks().forEach(c -> {
+            SplittableRandom r = randoms[c];
+            LongBuffer segment = segmentOf(c);
+            int offset = offsetOf(c);
+            int n = lengthOf(c);
+            for (int i = 0; i < n; i++) {
+                segment.put(offset + i, r.nextLong(bound));
+            }
+        });
+    }
+
+    /**
+     * 与 parallelFillRandom() 相同，用于普通的 int 数组：
+     * 替代 Arrays.parallelSetAll(ia, new Rand.Pint()::get)
+     */
+    static void parallelFillRandom(int[] a, long seed, int bound) {
+        int chunkSize = 1 << MAX_CHUNK_SHIFT;
+        int chunks = (a.length + chunkSize - 1) / chunkSize;
+        SplittableRandom[] randoms = splitRandoms(seed, chunks);
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            SplittableRandom r = randoms[c];
+            int end = (int) Math.min(a.length, (long) (c + 1) * chunkSize);
+            for (int i = c * chunkSize; i < end; i++) {
+                a[i] = r.nextInt(bound);
+            }
+        });
+    }
+
+    private static SplittableRandom[] splitRandoms(long seed, int count) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[count];
+        for (int i = 0; i < count; i++) {
+            randoms[i] = root.split();
+        }
+        return randoms;
+    }
+
+    /**
+     * 相当于 Arrays.parallelPrefix(long[], LongBinaryOperator)
+     */
+    void parallelPrefix(LongBinaryOperator op) {
+        int chunks = chunkCount();
+        /* 1. 每一块内的前缀 */
+        chunks().forEach(c -> {
+            LongBuffer segment = segmentOf(c);
+            int offset = offsetOf(c);
+            int n = lengthOf(c);
+            long acc = segment.get(offset);
+            for (int i = 1; i < n; i++) {
+                acc = op.applyAsLong(acc, segment.get(offset + i));
+                segment.put(offset + i, acc);
+            }
+        });
+        if (chunks <= 1) {
+            return;
+        }
+        /* 2. 第 c 块之前所有元素的累计值 */
+        long[] carry = new long[chunks];
+        carry[1] = lastOf(0);
+        for (int c = 2; c < chunks; c++) {
+            carry[c] = op.applyAsLong(carry[c - 1], lastOf(c - 1));
+        }
+        /* 3. 合并进每一块 */
+        IntStream.range(1, chunks).parallel().forEach(c -> {
+            LongBuffer segment = segmentOf(c);
+            int offset = offsetOf(c);
+            int n = lengthOf(c);
+            long before = carry[c];
+            for (int i = 0; i < n; i++) {
+                segment.put(offset + i, op.applyAsLong(before, segment.get(offset + i)));
+            }
+        });
+    }
+
+    /**
+     * 升序排序，相当于 Arrays.parallelSort(long[])
+     */
+    void parallelSort() {
+        int chunks = chunkCount();
+        /* 1. 每一块复制到堆上排序后再写回；duplicate() 使每个线程有自己的 position */
+        chunks().forEach(c -> {
+            LongBuffer view = segmentOf(c).duplicate();
+            long[] buffer = new long[lengthOf(c)];
+            view.position(offsetOf(c));
+            view.get(buffer);
+            Arrays.sort(buffer);
+            view.position(offsetOf(c));
+            view.put(buffer);
+        });
+        if (chunks <= 1) {
+            return;
+        }
+        /* 2. 逐层两两归并：每层合并后的有序区间长度翻倍 */
+        LargeLongArray other = new LargeLongArray(length, segmentShift);
+        LargeLongArray src = this;
+        LargeLongArray dst = other;
+        for (long width = 1L << chunkShift; width < length; width <<= 1) {
+            long w = width;
+            long pairs = (length + 2 * width - 1) / (2 * width);
+            LargeLongArray from = src;
+            LargeLongArray to = dst;
+            LongStream.range(0, pairs).parallel().forEach(p -> {
+                long lo = p * 2 * w;
+                long mid = Math.min(lo + w, length);
+                long hi = Math.min(lo + 2 * w, length);
+                merge(from, to, lo, mid, hi);
+            });
+            src = dst;
+            dst = from;
+        }
+        if (src != this) {
+            /* 结果在临时数组中：交换两者的分段，不再复制 */
+            LongBuffer[] tmp = segments;
+            segments = other.segments;
+            other.segments = tmp;
+        }
+        other.close();
+    }
+
+    private static void merge(LargeLongArray from, LargeLongArray to, long lo, long mid, long hi) {
+        long i = lo;
+        long j = mid;
+        long k = lo;
+        while (i < mid && j < hi) {
+            long a = from.get(i);
+            long b = from.get(j);
+            if (a <= b) {
+                to.set(k++, a);
+                i++;
+            } else {
+                to.set(k++, b);
+                j++;
+            }
+        }
+        while (i < mid) {
+            to.set(k++, from.get(i++));
+        }
+        while (j < hi) {
+            to.set(k++, from.get(j++));
+        }
+    }
+
+    @Override
+    public void close() {
+        segments = new LongBuffer[0];
+    }
+
+    private int chunkCount() {
+        return (int) ((length + (1L << chunkShift) - 1) >>> chunkShift);
+    }
+
+    private IntStream chunks() {
+        return IntStream.range(0, chunkCount()).parallel();
+    }
+
+    private LongBuffer segmentOf(int chunk) {
+        return segments[(int) (((long) chunk << chunkShift) >>> segmentShift)];
+    }
+
+    private int offsetOf(int chunk) {
+        return (int) (((long) chunk << chunkShift) & segmentMask);
+    }
+
+    private int lengthOf(int chunk) {
+        return (int) Math.min(1L << chunkShift, length - ((long) chunk << chunkShift));
+    }
+
+    private long lastOf(int chunk) {
+        return segmentOf(chunk).get(offsetOf(chunk) + lengthOf(chunk) - 1);
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+    }
+}
+
+/**
+ * CountUpward 和 ParallelPrefix3 中的操作，使用 LargeLongArray
+ */
+class LargeArrays {
+    public static void main(String[] args) {
+        /* 超过 2^31 个元素需要 16 GB 以上的直接内存：-XX:MaxDirectMemorySize=20g */
+        long size = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        try (LargeLongArray nums = new LargeLongArray(size)) {
+            nums.parallelSetAll(n -> n);
+            nums.parallelPrefix(Long::sum);
+            System.out.println("First 20: " + nums.get(19));
+            System.out.println("First 200: " + nums.get(199));
+            System.out.println("All: " + nums.get(nums.length() - 1));
+
+            nums.parallelFillRandom(47, Rand.MOD);
+            nums.parallelSort();
+            System.out.println("min: " + nums.get(0) + ", max: " + nums.get(nums.length() - 1));
+        }
+    }
+}
+/* Output:
+First 20: 190
+First 200: 19900
+All: 49999995000000
+min: 0, max: 9999
+ */
+
+/**
+ * 比较 Arrays 的并行操作与 LargeLongArray
+ * <p>
+ * 参数：元素个数（默认 100,000,000）、轮数（默认 3）
+ */
+class LargeArrayBenchmark {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            int[] ia = new int[size];
+            long start = System.nanoTime();
+            Arrays.parallelSetAll(ia, new Rand.Pint()::get);
+            report("Arrays.parallelSetAll(Rand.Pint)", start, ia[size - 1]);
+            start = System.nanoTime();
+            LargeLongArray.parallelFillRandom(ia, 47, Rand.MOD);
+            report("LargeLongArray.parallelFillRandom(int[])", start, ia[size - 1]);
+            ia = null;
+
+            long[] la = new long[size];
+            try (LargeLongArray large = new LargeLongArray(size)) {
+                Arrays.setAll(la, n -> n);
+                start = System.nanoTime();
+                Arrays.parallelPrefix(la, Long::sum);
+                report("Arrays.parallelPrefix(long[])", start, la[size - 1]);
+                large.parallelSetAll(n -> n);
+                start = System.nanoTime();
+                large.parallelPrefix(Long::sum);
+                report("LargeLongArray.parallelPrefix", start, large.get(size - 1));
+
+                large.parallelFillRandom(47, Long.MAX_VALUE);
+                for (int i = 0; i < size; i++) {
+                    la[i] = large.get(i);
+                }
+                start = System.nanoTime();
+                Arrays.parallelSort(la);
+                report("Arrays.parallelSort(long[])", start, la[size / 2]);
+                start = System.nanoTime();
+                large.parallelSort();
+                report("LargeLongArray.parallelSort", start, large.get(size / 2));
+                if (large.get(size / 2) != la[size / 2]) {
+                    throw new AssertionError("sort mismatch");
+                }
+            }
+        }
+    }
+
+    private static void report(String name, long start, long result) {
+        System.out.printf("  %-42s %8.1f ms  (%d)%n", name, (System.nanoTime() - start) / 1e6, result);
+    }
+}
@@ -39,6 +39,11 @@ class ParallelSetAll {
         Arrays.setAll(ia, new Rand.Pint()::get);
         /* 并行的 parallelSetAll() 比 setAll() 要快好多 */
         Arrays.parallelSetAll(ia, new Rand.Pint()::get);
+        /*
+        NOTE：上面所有线程共用同一个 SplittableRandom（不是线程安全的），结果不可重复；
+        每个线程使用自己 split() 出来的 SplittableRandom，以及超过 2^31 个元素的数组，见 大数组.java 中的 LargeLongArray
+         */
+        LargeLongArray.parallelFillRandom(ia, 47, Rand.MOD);
     }
 
     public static void main(String[] args) {
@@ -47,4 +47,6 @@ enum RoShamBo6 implements Competitor<RoShamBo6> {
 
 然而，也没有什么特别的理由阻止你用 table 来生成功能对象。
 对于某类问题而言，“表驱动式编码”的概念具有非常强大的功能。
+
+NOTE：由规则函数自动生成一维分发表（并检查尺寸）的做法，见 6多路分发之使用分发表 中的 Dispatch2
  */
@@ -0,0 +1,246 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/*
+RoShamBo6 的二维数组最快，但正如其后面的注释所说，手写的表既“僵硬”又不安全：
+尺寸写错、某个组合漏掉了，编译器都发现不了。
+
+Dispatch2 把“规则”和“表”分开：
+规则是一个普通的函数 (A, B) -> R，写起来与 RoShamBo4 的 compete() 一样直观；
+Dispatch2.of() 在创建时对所有 A × B 的组合调用一次规则，结果保存在一个按 ordinal() 索引的一维数组中，
+之后的每次分发都只是一次数组访问：table[a.ordinal() * B 的常量个数 + b.ordinal()]。
+
+1. 表由程序生成，尺寸不会写错；规则对某个组合返回 null 时立即抛出异常，而不是等到分发时才发现漏掉了；
+2. 一维数组比 OutCome[][] 少一次取行数组的间接访问和一次边界检查；
+3. A 和 B 可以是不同的 enum。
+ */
+final class Dispatch2<A extends Enum<A>, B extends Enum<B>, R> implements BiFunction<A, B, R> {
+    private final Class<A> first;
+    private final Class<B> second;
+    private final int columns;
+    private final Object[] table;
+
+    private Dispatch2(Class<A> first, Class<B> second, Object[] table) {
+        this.first = first;
+        this.second = second;
+        this.columns = second.getEnumConstants().length;
+        this.table = table;
+    }
+
+    public static <A extends Enum<A>, B extends Enum<B>, R> Dispatch2<A, B, R>
+    of(Class<A> first, Class<B> second, BiFunction<? super A, ? super B, ? extends R> rule) {
+        A[] as = first.getEnumConstants();
+        B[] bs = second.getEnumConstants();
+        Object[] table = new Object[as.length * bs.length];
+        for (A a : as) {
+            for (B b : bs) {
+                R r = rule.apply(a, b);
+                if (r == null) {
+                    throw new NullPointerException("no rule for " + a + ", " + b);
+                }
+                table[a.ordinal() * bs.length + b.ordinal()] = r;
+            }
+        }
+        return new Dispatch2<>(first, second, table);
+    }
+
+    /**
+     * 从手写的表创建，检查表的尺寸
+     */
+    public static <A extends Enum<A>, B extends Enum<B>, R> Dispatch2<A, B, R>
+    of(Class<A> first, Class<B> second, R[][] rows) {
+        int size = first.getEnumConstants().length;
+        if (rows.length != size) {
+            throw new IllegalArgumentException(first.getSimpleName() + " has " + size + " constants, but "
+                    + rows.length + " rows given");
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].length != second.getEnumConstants().length) {
+                throw new IllegalArgumentException("row " + i + ": " + rows[i].length + " columns, "
+                        + second.getSimpleName() + " has " + second.getEnumConstants().length + " constants");
+            }
+        }
+        return of(first, second, (a, b) -> rows[a.ordinal()][b.ordinal()]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R apply(A a, B b) {
+        return (R) table[a.ordinal() * columns + b.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(first.getSimpleName() + " x " + second.getSimpleName() + ":");
+        for (A a : first.getEnumConstants()) {
+            sb.append("\n  ").append(a).append(": ")
+                    .append(Arrays.toString(Arrays.copyOfRange(table, a.ordinal() * columns, (a.ordinal() + 1) * columns)));
+        }
+        return sb.toString();
+    }
+}
+
+/**
+ * 用规则生成表，而不是手写表：
+ */
+enum RoShamBo7 implements Competitor<RoShamBo7> {
+    PAPER, SCISSORS, ROCK;
+    private static final Dispatch2<RoShamBo7, RoShamBo7, OutCome> table =
+            Dispatch2.of(RoShamBo7.class, RoShamBo7.class,
+                    (a, b) -> a == b ? OutCome.DRAW : b == a.beats() ? OutCome.WIN : OutCome.LOSE);
+
+    RoShamBo7 beats() {
+        switch (this) {
+            default:
+            case PAPER:
+                return ROCK;
+            case SCISSORS:
+                return PAPER;
+            case ROCK:
+                return SCISSORS;
+        }
+    }
+
+    @Override
+    public OutCome compete(RoShamBo7 it) {
+        return table.apply(this, it);
+    }
+
+    public static void main(String[] args) {
+        System.out.println(table);
+        for (int i = 0; i < 5; i++) {
+            RoShamBo7 a = Enums.random(RoShamBo7.class);
+            RoShamBo7 b = Enums.random(RoShamBo7.class);
+            System.out.println(a + " vs. " + b + ": " + a.compete(b));
+        }
+        /* 两个不同的 enum，规则直接复用已有的 RoShamBo2 */
+        Dispatch2<RoShamBo7, RoShamBo2, OutCome> mixed = Dispatch2.of(RoShamBo7.class, RoShamBo2.class,
+                (a, b) -> RoShamBo2.valueOf(a.name()).compete(b));
+        System.out.println(mixed.apply(ROCK, RoShamBo2.SCISSORS));
+        try {
+            Dispatch2.of(RoShamBo7.class, RoShamBo7.class, new OutCome[][]{
+                    {OutCome.DRAW, OutCome.LOSE, OutCome.WIN},
+                    {OutCome.WIN, OutCome.DRAW},
+                    {OutCome.LOSE, OutCome.WIN, OutCome.DRAW},
+            });
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
+/* Output:
+RoShamBo7 x RoShamBo7:
+  PAPER: [DRAW, LOSE, WIN]
+  SCISSORS: [WIN, DRAW, LOSE]
+  ROCK: [LOSE, WIN, DRAW]
+ROCK vs. ROCK: DRAW
+SCISSORS vs. ROCK: LOSE
+SCISSORS vs. ROCK: LOSE
+SCISSORS vs. ROCK: LOSE
+PAPER vs. SCISSORS: LOSE
+WIN
+row 1: 2 columns, RoShamBo7 has 3 constants
+ */
+
+/**
+ * 比较各种两路分发方式的耗时（每次分发的纳秒数）。
+ * 参数：分发次数(默认 100_000_000)、轮数(默认 5)；
+ * 所有方式使用同一组随机的 (a, b) 序号，每种方式都有自己的循环，避免同一个调用点变成多态调用而互相影响。
+ */
+class DispatchBenchmark {
+    private static final int MASK = (1 << 16) - 1;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random random = new Random(47);
+        int[] as = new int[MASK + 1];
+        int[] bs = new int[MASK + 1];
+        for (int i = 0; i <= MASK; i++) {
+            as[i] = random.nextInt(3);
+            bs[i] = random.nextInt(3);
+        }
+        Item[] items = {new Paper(), new Scissors(), new Rock()};
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            report("RoShamBo (Item interface)", start, count, items(items, as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo2 (constructor + switch)", start, count, roShamBo2(as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo3 (constant method + switch)", start, count, roShamBo3(as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo4 (constant method + compare)", start, count, roShamBo4(as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo5 (EnumMap)", start, count, roShamBo5(as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo6 (2D array)", start, count, roShamBo6(as, bs, count));
+            start = System.nanoTime();
+            report("RoShamBo7 (Dispatch2)", start, count, roShamBo7(as, bs, count));
+        }
+    }
+
+    /* 结果是所有分发结果的 ordinal() 之和，
+    RoShamBo3 中 SCISSORS 对 ROCK 返回的是 WIN，所以它的结果与其他方式不同 */
+    private static long items(Item[] items, int[] as, int[] bs, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += items[as[i & MASK]].compete(items[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    private static long roShamBo2(int[] as, int[] bs, int count) {
+        RoShamBo2[] values = RoShamBo2.values();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    private static long roShamBo3(int[] as, int[] bs, int count) {
+        RoShamBo3[] values = RoShamBo3.values();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    /* RoShamBo4 的常量声明顺序是 ROCK, SCISSORS, PAPER，按名字换成与其他方式相同的顺序 */
+    private static long roShamBo4(int[] as, int[] bs, int count) {
+        RoShamBo4[] values = {RoShamBo4.PAPER, RoShamBo4.SCISSORS, RoShamBo4.ROCK};
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    private static long roShamBo5(int[] as, int[] bs, int count) {
+        RoShamBo5[] values = RoShamBo5.values();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    private static long roShamBo6(int[] as, int[] bs, int count) {
+        RoShamBo6[] values = RoShamBo6.values();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+    private static long roShamBo7(int[] as, int[] bs, int count) {
+        RoShamBo7[] values = RoShamBo7.values();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[as[i & MASK]].compete(values[bs[i & MASK]]).ordinal();
+        }
+        return sum;
+    }
+
+    private static void report(String name, long start, int count, long result) {
+        System.out.printf("  %-40s %6.2f ns  (%d)%n", name, (double) (System.nanoTime() - start) / count, result);
+    }
+}
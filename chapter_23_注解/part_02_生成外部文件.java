@@ -71,6 +71,7 @@ class Member {
 
 /**
  * 【实现处理器】
+ * NOTE：每次都重新反射、只生成 CREATE TABLE；缓存表结构并批量生成 INSERT 语句，见 part_05_表结构缓存与批量插入 中的 TableSchema
  */
 class TableCreator {
     public static void main(String[] args) throws ClassNotFoundException {
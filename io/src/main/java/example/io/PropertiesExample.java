@@ -1,10 +1,15 @@
 package example.io;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * 示例：读取配置
+ *
+ * @see PropertiesStore
  */
 public class PropertiesExample {
     public static void main(String[] args) throws IOException {
@@ -13,6 +18,7 @@ public class PropertiesExample {
         readProperties(filePath);
         addProperties();
         setProperties();
+        cachedProperties();
     }
 
     /**
@@ -70,4 +76,19 @@ public class PropertiesExample {
         properties.setProperty("b", "李四");
         properties.store(new FileOutputStream("D:\\CodeRepositories\\java\\io\\src\\main\\resources\\b.properties"), "这里是注释");
     }
+
+    /**
+     * 使用 PropertiesStore 缓存配置：文件只读取一次，修改后自动重新加载；写入时批量修改并原子替换文件
+     */
+    private static void cachedProperties() throws IOException {
+        try (PropertiesStore store = new PropertiesStore(Paths.get("D:\\CodeRepositories\\java\\io\\src\\main\\resources\\b.properties"))) {
+            Map<String, String> changes = new HashMap<>();
+            changes.put("a", "wa");
+            changes.put("b", "李四");
+            changes.put("port", "8080");
+            store.update(changes, "这里是注释");
+            System.out.println("b: " + store.get("b"));
+            System.out.println("port: " + store.getInt("port", 80));
+        }
+    }
 }
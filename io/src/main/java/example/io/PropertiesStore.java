@@ -0,0 +1,235 @@
+package example.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 带缓存的配置文件：适合在热点路径上频繁读取配置
+ * <p>
+ * 与 {@link PropertiesExample} 每次都重新读取整个文件不同：
+ * <ul>
+ * <li> 文件只在启动和发生变化时读取一次，解析结果保存为一个不可变的快照，读取配置时只是一次 volatile 读，不需要加锁
+ * <li> 后台线程通过 WatchService 监听文件所在的目录，文件被修改后自动重新加载并替换快照
+ * <li> getInt/getLong/getBoolean 等类型化的方法在每个快照中只解析一次，之后直接返回缓存的结果
+ * <li> 写入时批量修改，先写到同目录下的临时文件，再通过 rename 原子地替换原文件，其他进程不会读到写了一半的文件
+ * </ul>
+ * NOTE：文件按 UTF-8 读写。
+ *
+ * @see PropertiesExample
+ */
+public class PropertiesStore implements Closeable {
+
+    /**
+     * 某一时刻的配置，创建后不可变
+     */
+    public static final class Snapshot {
+        private final Map<String, String> values;
+        private final Map<String, Integer> ints = new ConcurrentHashMap<>();
+        private final Map<String, Long> longs = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> booleans = new ConcurrentHashMap<>();
+
+        private Snapshot(Map<String, String> values) {
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        public Map<String, String> asMap() {
+            return values;
+        }
+
+        /* 只能解析本快照中的值、缓存到本快照中，调用方不会把一个快照的解析结果放进另一个快照 */
+        private Integer parsedInt(String key) {
+            return parsed(ints, key, Integer::valueOf);
+        }
+
+        private Long parsedLong(String key) {
+            return parsed(longs, key, Long::valueOf);
+        }
+
+        private Boolean parsedBoolean(String key) {
+            return parsed(booleans, key, PropertiesStore::parseBoolean);
+        }
+
+        private <V> V parsed(Map<String, V> cache, String key, Function<String, V> parser) {
+            V value = cache.get(key);
+            if (value == null) {
+                String raw = values.get(key);
+                if (raw == null) {
+                    return null;
+                }
+                try {
+                    value = parser.apply(raw.trim());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid value for property " + key + ": " + raw, e);
+                }
+                cache.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    private final Path file;
+    private final WatchService watchService;
+    private final Thread watcher;
+    private volatile Snapshot snapshot;
+
+    /**
+     * 加载配置文件并启动后台监听线程
+     */
+    public PropertiesStore(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.snapshot = load();
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcher = new Thread(this::watch, "properties-watcher-" + this.file.getFileName());
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public String get(String key) {
+        return snapshot.values.get(key);
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = snapshot.values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Integer value = snapshot.parsedInt(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Long value = snapshot.parsedLong(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Boolean value = snapshot.parsedBoolean(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * 批量修改配置：value 为 null 表示删除该属性
+     * <p>
+     * 修改会先原子地写入文件，成功后才替换内存中的快照。多个线程同时写入时串行执行。
+     */
+    public synchronized void update(Map<String, String> changes, String comments) throws IOException {
+        Map<String, String> values = new HashMap<>(load().values);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                values.remove(change.getKey());
+            } else {
+                values.put(change.getKey(), change.getValue());
+            }
+        }
+        Properties properties = new Properties();
+        properties.putAll(values);
+
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, comments);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        snapshot = new Snapshot(values);
+    }
+
+    public void set(String key, String value) throws IOException {
+        update(Collections.singletonMap(key, value), null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * 读取当前文件的内容，文件不存在时返回空配置
+     */
+    private Snapshot load() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return new Snapshot(new HashMap<>());
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, properties.getProperty(name));
+        }
+        return new Snapshot(values);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // OVERFLOW 时无法确定是哪个文件，直接重新加载
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 调用了 close()，结束监听
+        }
+    }
+
+    /**
+     * 与 update 互斥，避免用旧文件的内容覆盖刚刚写入的快照
+     */
+    private synchronized void reload() {
+        try {
+            snapshot = load();
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            // 文件可能正在被其他程序写入，保留旧的快照，等待下一次修改事件
+            System.err.println("Failed to reload " + file + ": " + e);
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+}
@@ -0,0 +1,128 @@
+package example.io.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 对比 Java 序列化（ObjectOutputStream/ObjectInputStream）与 RecordSchema 的序列化结果大小和吞吐量
+ * <p>
+ * 用法：java example.io.codec.CodecBenchmark [记录数] [重复次数]
+ *
+ * @see example.io.outputstream.ObjectOutputStreamExample
+ */
+public class CodecBenchmark {
+
+    /**
+     * 测试用的小记录
+     */
+    static class Trade implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long id;
+        private int quantity;
+        private double price;
+        private boolean buy;
+        private String symbol;
+
+        long getId() { return id; }
+        void setId(long id) { this.id = id; }
+        int getQuantity() { return quantity; }
+        void setQuantity(int quantity) { this.quantity = quantity; }
+        double getPrice() { return price; }
+        void setPrice(double price) { this.price = price; }
+        boolean isBuy() { return buy; }
+        void setBuy(boolean buy) { this.buy = buy; }
+        String getSymbol() { return symbol; }
+        void setSymbol(String symbol) { this.symbol = symbol; }
+    }
+
+    static final RecordSchema<Trade> TRADE_SCHEMA = RecordSchemas.register(
+            RecordSchema.builder(Trade.class, Trade::new)
+                    .longField(Trade::getId, Trade::setId)
+                    .intField(Trade::getQuantity, Trade::setQuantity)
+                    .doubleField(Trade::getPrice, Trade::setPrice)
+                    .booleanField(Trade::isBuy, Trade::setBuy)
+                    .stringField(Trade::getSymbol, Trade::setSymbol)
+                    .build());
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Trade> trades = createTrades(count);
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("---- 第 " + round + " 轮（" + count + " 条记录）----");
+
+            long start = System.nanoTime();
+            ByteArrayOutputStream javaBytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(javaBytes)) {
+                for (Trade trade : trades) {
+                    out.writeObject(trade);
+                    // 避免句柄表无限增长，与逐条持久化的场景一致
+                    out.reset();
+                }
+            }
+            long javaWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int javaRead = 0;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaBytes.toByteArray()))) {
+                for (int i = 0; i < count; i++) {
+                    if (in.readObject() != null) {
+                        javaRead++;
+                    }
+                }
+            }
+            long javaReadTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ByteArrayOutputStream codecBytes = new ByteArrayOutputStream();
+            try (RecordWriter<Trade> writer = new RecordWriter<>(RecordSchemas.schemaFor(Trade.class), codecBytes)) {
+                for (Trade trade : trades) {
+                    writer.write(trade);
+                }
+            }
+            long codecWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int codecRead = 0;
+            try (RecordReader<Trade> reader = new RecordReader<>(TRADE_SCHEMA, new ByteArrayInputStream(codecBytes.toByteArray()))) {
+                while (reader.read() != null) {
+                    codecRead++;
+                }
+            }
+            long codecReadTime = System.nanoTime() - start;
+
+            report("Java 序列化", javaBytes.size(), count, javaWrite, javaRead, javaReadTime);
+            report("RecordSchema", codecBytes.size(), count, codecWrite, codecRead, codecReadTime);
+        }
+    }
+
+    private static void report(String name, int size, int count, long writeNanos, int read, long readNanos) {
+        System.out.printf("%-12s %,12d 字节  写 %,12.0f ops/s  读 %,12.0f ops/s  (读取 %d 条)%n",
+                name, size, count * 1e9 / writeNanos, read * 1e9 / readNanos, read);
+    }
+
+    private static List<Trade> createTrades(int count) {
+        String[] symbols = {"AAPL", "MSFT", "600519.SH", "000001.SZ", "腾讯控股"};
+        Random random = new Random(47);
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Trade trade = new Trade();
+            trade.setId(i);
+            trade.setQuantity(random.nextInt(10_000));
+            trade.setPrice(random.nextDouble() * 1000);
+            trade.setBuy(random.nextBoolean());
+            trade.setSymbol(symbols[random.nextInt(symbols.length)]);
+            trades.add(trade);
+        }
+        return trades;
+    }
+}
@@ -0,0 +1,95 @@
+package example.io.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 从输入流中逐条读取 {@link RecordWriter} 写入的记录
+ * <p>
+ * NOTE：RecordReader 不是线程安全的。
+ *
+ * @param <T> 记录的类型
+ * @see RecordWriter
+ */
+public class RecordReader<T> implements Closeable {
+
+    private final RecordSchema<T> schema;
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+
+    public RecordReader(RecordSchema<T> schema, InputStream in) {
+        this(schema, Channels.newChannel(in), RecordWriter.DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordReader(RecordSchema<T> schema, ReadableByteChannel channel, int bufferSize) {
+        this.schema = schema;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 下一条记录，已经读到流的末尾时返回 null
+     */
+    public T read() throws IOException {
+        if (!fill(Integer.BYTES)) {
+            if (buffer.hasRemaining()) {
+                throw new EOFException("Truncated record length");
+            }
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 0) {
+            throw new StreamCorruptedException("Negative record length: " + length);
+        }
+        if (!fill(length)) {
+            throw new EOFException("Truncated record, expected " + length + " bytes");
+        }
+        int end = buffer.position() + length;
+        T record = schema.read(buffer);
+        if (buffer.position() != end) {
+            throw new StreamCorruptedException("Record length mismatch, expected " + length + " bytes but read "
+                    + (buffer.position() - end + length));
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 保证缓冲区中至少有 required 个未读字节
+     *
+     * @return 读到流末尾仍然不足时返回 false
+     */
+    private boolean fill(int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return true;
+        }
+        if (buffer.capacity() < required) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < required) {
+            if (channel.read(buffer) == -1) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
@@ -0,0 +1,242 @@
+package example.io.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 一个类的二进制布局：按注册顺序依次写入各个字段
+ * <ul>
+ * <li> 基本类型按固定长度写入（int 4 字节、long 8 字节、double 8 字节、boolean 1 字节）
+ * <li> String 写入 4 字节的长度前缀 + UTF-8 字节，null 的长度为 -1
+ * </ul>
+ * 与 Java 序列化不同，这里不写入类描述信息，也不使用反射读写字段，读写双方需要使用相同的 schema。
+ * <p>
+ * RecordSchema 创建后不可变，可以被多个线程共享。
+ *
+ * @param <T> 记录的类型
+ * @see RecordWriter
+ * @see RecordReader
+ */
+public final class RecordSchema<T> {
+
+    /**
+     * 一个字段的读写方式
+     */
+    private interface Field<T> {
+        void write(T record, ByteBuffer buffer);
+
+        void read(T record, ByteBuffer buffer);
+    }
+
+    /**
+     * boolean 版本的 ObjIntConsumer
+     */
+    @FunctionalInterface
+    public interface ObjBooleanConsumer<T> {
+        void accept(T t, boolean value);
+    }
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final List<Field<T>> fields;
+
+    private RecordSchema(Class<T> type, Supplier<T> factory, List<Field<T>> fields) {
+        this.type = type;
+        this.factory = factory;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+    }
+
+    public static <T> Builder<T> builder(Class<T> type, Supplier<T> factory) {
+        return new Builder<>(type, factory);
+    }
+
+    public Class<T> type() {
+        return type;
+    }
+
+    /**
+     * 把记录写入 buffer 的当前位置
+     *
+     * @throws java.nio.BufferOverflowException buffer 剩余空间不足
+     */
+    public void write(T record, ByteBuffer buffer) {
+        for (Field<T> field : fields) {
+            field.write(record, buffer);
+        }
+    }
+
+    /**
+     * 从 buffer 的当前位置读取一条记录
+     *
+     * @throws java.nio.BufferUnderflowException buffer 中的数据不足（包括字符串的长度超出了 buffer 的剩余字节）
+     */
+    public T read(ByteBuffer buffer) {
+        T record = factory.get();
+        for (Field<T> field : fields) {
+            field.read(record, buffer);
+        }
+        return record;
+    }
+
+    public static final class Builder<T> {
+        private final Class<T> type;
+        private final Supplier<T> factory;
+        private final List<Field<T>> fields = new ArrayList<>();
+
+        private Builder(Class<T> type, Supplier<T> factory) {
+            this.type = type;
+            this.factory = factory;
+        }
+
+        public Builder<T> intField(ToIntFunction<T> getter, ObjIntConsumer<T> setter) {
+            fields.add(new Field<T>() {
+                @Override
+                public void write(T record, ByteBuffer buffer) {
+                    buffer.putInt(getter.applyAsInt(record));
+                }
+
+                @Override
+                public void read(T record, ByteBuffer buffer) {
+                    setter.accept(record, buffer.getInt());
+                }
+            });
+            return this;
+        }
+
+        public Builder<T> longField(ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+            fields.add(new Field<T>() {
+                @Override
+                public void write(T record, ByteBuffer buffer) {
+                    buffer.putLong(getter.applyAsLong(record));
+                }
+
+                @Override
+                public void read(T record, ByteBuffer buffer) {
+                    setter.accept(record, buffer.getLong());
+                }
+            });
+            return this;
+        }
+
+        public Builder<T> doubleField(ToDoubleFunction<T> getter, ObjDoubleConsumer<T> setter) {
+            fields.add(new Field<T>() {
+                @Override
+                public void write(T record, ByteBuffer buffer) {
+                    buffer.putDouble(getter.applyAsDouble(record));
+                }
+
+                @Override
+                public void read(T record, ByteBuffer buffer) {
+                    setter.accept(record, buffer.getDouble());
+                }
+            });
+            return this;
+        }
+
+        public Builder<T> booleanField(Predicate<T> getter, ObjBooleanConsumer<T> setter) {
+            fields.add(new Field<T>() {
+                @Override
+                public void write(T record, ByteBuffer buffer) {
+                    buffer.put(getter.test(record) ? (byte) 1 : (byte) 0);
+                }
+
+                @Override
+                public void read(T record, ByteBuffer buffer) {
+                    setter.accept(record, buffer.get() != 0);
+                }
+            });
+            return this;
+        }
+
+        public Builder<T> stringField(Function<T, String> getter, BiConsumer<T, String> setter) {
+            fields.add(new Field<T>() {
+                @Override
+                public void write(T record, ByteBuffer buffer) {
+                    writeString(getter.apply(record), buffer);
+                }
+
+                @Override
+                public void read(T record, ByteBuffer buffer) {
+                    setter.accept(record, readString(buffer));
+                }
+            });
+            return this;
+        }
+
+        public RecordSchema<T> build() {
+            return new RecordSchema<>(type, factory, fields);
+        }
+    }
+
+    /**
+     * 直接把字符编码成 UTF-8 写入 buffer，不需要 String.getBytes 产生的临时数组
+     */
+    static void writeString(String value, ByteBuffer buffer) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与 String.getBytes 一样替换成 '?'
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - start);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            // 长度已损坏：堆内缓冲区的分支不经过 get()，不检查就会读到 limit 之后的数据
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,35 @@
+package example.io.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按类注册 RecordSchema，读写双方通过类型查找同一个 schema
+ */
+public final class RecordSchemas {
+
+    private static final ConcurrentMap<Class<?>, RecordSchema<?>> SCHEMAS = new ConcurrentHashMap<>();
+
+    private RecordSchemas() {
+    }
+
+    /**
+     * 注册一个 schema，同一个类只能注册一次
+     */
+    public static <T> RecordSchema<T> register(RecordSchema<T> schema) {
+        RecordSchema<?> previous = SCHEMAS.putIfAbsent(schema.type(), schema);
+        if (previous != null && previous != schema) {
+            throw new IllegalStateException("Schema already registered for " + schema.type().getName());
+        }
+        return schema;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RecordSchema<T> schemaFor(Class<T> type) {
+        RecordSchema<T> schema = (RecordSchema<T>) SCHEMAS.get(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("No schema registered for " + type.getName());
+        }
+        return schema;
+    }
+}
@@ -0,0 +1,89 @@
+package example.io.codec;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 把记录按 RecordSchema 写入输出流，每条记录前面有 4 字节的长度
+ * <p>
+ * 所有记录都先写入同一个可复用的 ByteBuffer，写满后再一次性写到底层 Channel；遇到比缓冲区还大的记录时会自动扩容。
+ * <p>
+ * NOTE：RecordWriter 不是线程安全的。
+ *
+ * @param <T> 记录的类型
+ * @see RecordReader
+ */
+public class RecordWriter<T> implements Closeable, Flushable {
+
+    /** 默认缓冲区大小：64 KB */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final RecordSchema<T> schema;
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer;
+
+    public RecordWriter(RecordSchema<T> schema, OutputStream out) {
+        this(schema, Channels.newChannel(out), DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordWriter(RecordSchema<T> schema, WritableByteChannel channel, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.schema = schema;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    public void write(T record) throws IOException {
+        while (true) {
+            int start = buffer.position();
+            try {
+                buffer.putInt(0);
+                schema.write(record, buffer);
+                buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+                return;
+            } catch (BufferOverflowException e) {
+                // 丢弃写了一半的记录，先把缓冲区中完整的记录写出去，仍然放不下时再扩容
+                buffer.position(start);
+                if (start > 0) {
+                    flushBuffer();
+                } else {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            } catch (RuntimeException | Error e) {
+                // 其他异常同样要丢弃写了一半的记录，否则下次 flush 时会把它和长度为 0 的前缀一起写出去
+                buffer.position(start);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
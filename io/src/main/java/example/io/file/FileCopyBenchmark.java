@@ -0,0 +1,116 @@
+package example.io.file;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * 对比 {@link FileCopyExample} 中的三种拷贝方式与 {@link FileCopyEngine} 的耗时
+ * <p>
+ * 用法：java example.io.file.FileCopyBenchmark [文件大小(MB)] [重复次数]
+ * <p>
+ * NOTE：第一轮包含 JIT 预热和页缓存预热，只看后面几轮的结果更准确。
+ *
+ * @author  qiangj
+ */
+public class FileCopyBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("file-copy-bench");
+        Path source = dir.resolve("source.txt");
+        Path target = dir.resolve("target.txt");
+        createSourceFile(source, sizeMb * 1024L * 1024);
+
+        FileCopyEngine transferEngine = new FileCopyEngine(FileCopyEngine.DEFAULT_CHUNK_SIZE, Long.MAX_VALUE);
+        FileCopyEngine mappedEngine = new FileCopyEngine(FileCopyEngine.DEFAULT_CHUNK_SIZE, 0);
+        FileCopyEngine streamEngine = new FileCopyEngine();
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                System.out.println("---- 第 " + round + " 轮（" + sizeMb + " MB）----");
+                time("FileInputStream + byte[1024]", () -> streamCopy(source, target));
+                time("BufferedReader/BufferedWriter", () -> lineCopy(source, target));
+                time("BufferedInputStream + byte[1024]", () -> bufferedStreamCopy(source, target));
+                time("FileCopyEngine transferTo", () -> transferEngine.copy(source, target));
+                time("FileCopyEngine mapped", () -> mappedEngine.copy(source, target));
+                time("FileCopyEngine direct buffer", () -> {
+                    try (InputStream in = Files.newInputStream(source);
+                         OutputStream out = Files.newOutputStream(target)) {
+                        streamEngine.copy(in, out);
+                    }
+                });
+            }
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(target);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private interface CopyTask {
+        void run() throws IOException;
+    }
+
+    private static void time(String name, CopyTask task) throws IOException {
+        long start = System.nanoTime();
+        task.run();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-36s %8.2f ms%n", name, elapsed / 1_000_000.0);
+    }
+
+    /**
+     * 生成一个可按行读取的文本文件，保证字符流拷贝也能得到相同大小的结果
+     */
+    private static void createSourceFile(Path path, long size) throws IOException {
+        Random random = new Random(47);
+        byte[] line = new byte[100];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            for (long written = 0; written < size; written += line.length) {
+                for (int i = 0; i < line.length - 1; i++) {
+                    line[i] = (byte) ('a' + random.nextInt(26));
+                }
+                line[line.length - 1] = '\n';
+                out.write(line);
+            }
+        }
+    }
+
+    /** 对应 FileCopyExample.fileCopy */
+    private static void streamCopy(Path source, Path target) throws IOException {
+        try (FileInputStream in = new FileInputStream(source.toFile());
+             FileOutputStream out = new FileOutputStream(target.toFile())) {
+            byte[] buffer = new byte[1024];
+            int readLength;
+            while ((readLength = in.read(buffer)) != -1) {
+                out.write(buffer, 0, readLength);
+            }
+        }
+    }
+
+    /** 对应 FileCopyExample.fileCopy2 */
+    private static void lineCopy(Path source, Path target) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(source.toFile()));
+             BufferedWriter writer = new BufferedWriter(new FileWriter(target.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    /** 对应 FileCopyExample.fileCopy3 */
+    private static void bufferedStreamCopy(Path source, Path target) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(source));
+             BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            byte[] buffer = new byte[1024];
+            int readLength;
+            while ((readLength = in.read(buffer)) != -1) {
+                out.write(buffer, 0, readLength);
+            }
+        }
+    }
+}
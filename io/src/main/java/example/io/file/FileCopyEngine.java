@@ -0,0 +1,155 @@
+package example.io.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 文件拷贝引擎：根据数据源的类型选择拷贝方式，避免 {@link FileCopyExample} 中经过 1 KB 堆内 byte[] 的逐块拷贝。
+ * <ul>
+ * <li> 文件到文件：使用 FileChannel.transferTo，由操作系统完成拷贝（零拷贝），不经过用户态缓冲区
+ * <li> 大文件（不小于 mappedThreshold）：按窗口映射源文件（MappedByteBuffer），直接写入目标 Channel
+ * <li> 流到流：使用池化的直接缓冲区（DirectByteBuffer），避免每次拷贝都重新分配缓冲区
+ * </ul>
+ * NOTE：一个引擎实例是线程安全的，缓冲区池可以被多个线程共享。
+ *
+ * @see     FileCopyExample
+ * @author  qiangj
+ */
+public class FileCopyEngine {
+
+    /** 默认的分块大小：8 MB */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** 默认使用内存映射的文件大小阈值：256 MB */
+    public static final long DEFAULT_MAPPED_THRESHOLD = 256L * 1024 * 1024;
+
+    /** 流拷贝时使用的直接缓冲区大小：64 KB */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final long mappedThreshold;
+    private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    public FileCopyEngine() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_MAPPED_THRESHOLD);
+    }
+
+    /**
+     * @param chunkSize       每次 transferTo / 映射窗口的字节数
+     * @param mappedThreshold 文件大小不小于该值时使用内存映射窗口拷贝，传入 Long.MAX_VALUE 表示不使用内存映射
+     */
+    public FileCopyEngine(int chunkSize, long mappedThreshold) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    /**
+     * 拷贝文件，目标文件存在时会被覆盖
+     * <p>
+     * 与 Files.copy 相同，源文件和目标文件是同一个文件（同一路径，或者指向源文件的硬链接、符号链接）时不做任何操作，
+     * 否则以 TRUNCATE_EXISTING 打开目标文件时会把源文件截断为 0 字节。
+     *
+     * @return 拷贝的字节数，源文件和目标文件是同一个文件时返回 0
+     */
+    public long copy(Path source, Path target) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (size >= mappedThreshold) {
+                return copyMapped(in, out, size);
+            }
+            return copyTransfer(in, out, size);
+        }
+    }
+
+    /**
+     * 拷贝流，不会关闭传入的流
+     *
+     * @return 拷贝的字节数
+     */
+    public long copy(InputStream source, OutputStream target) throws IOException {
+        return copy(Channels.newChannel(source), Channels.newChannel(target));
+    }
+
+    /**
+     * 使用池化的直接缓冲区拷贝 Channel，不会关闭传入的 Channel
+     *
+     * @return 拷贝的字节数
+     */
+    public long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * transferTo 单次调用不保证传输完所有数据（Linux 下单次最多约 2 GB），所以需要循环
+     */
+    private long copyTransfer(FileChannel in, FileChannel out, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long transferred = in.transferTo(position, Math.min(chunkSize, size - position), out);
+            if (transferred <= 0) {
+                // 源文件在拷贝过程中被截断
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    /**
+     * 按 chunkSize 大小的窗口映射源文件，单个 MappedByteBuffer 最大只能映射 2 GB
+     */
+    private long copyMapped(FileChannel in, FileChannel out, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long windowSize = Math.min(chunkSize, size - position);
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            while (window.hasRemaining()) {
+                out.write(window);
+            }
+            position += windowSize;
+        }
+        return position;
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+}
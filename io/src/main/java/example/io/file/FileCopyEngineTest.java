@@ -0,0 +1,73 @@
+package example.io.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 检查 {@link FileCopyEngine#copy(Path, Path)} 在源文件和目标文件是同一个文件时不会截断源文件
+ *
+ * @author  qiangj
+ */
+public class FileCopyEngineTest {
+
+    public static void main(String[] args) throws IOException {
+        byte[] content = "FileCopyEngine same file\n".getBytes(StandardCharsets.UTF_8);
+        Path dir = Files.createTempDirectory("file-copy-test");
+        Path source = dir.resolve("source.txt");
+        Path hardLink = dir.resolve("hard-link.txt");
+        Path symbolicLink = dir.resolve("symbolic-link.txt");
+        try {
+            Files.write(source, content);
+            for (FileCopyEngine engine : new FileCopyEngine[] {
+                    new FileCopyEngine(), new FileCopyEngine(FileCopyEngine.DEFAULT_CHUNK_SIZE, 0)}) {
+                check("同一路径", engine, source, source, content);
+                check("相对路径", engine, source, dir.resolve("..").resolve(dir.getFileName()).resolve("source.txt"), content);
+                if (createLink(hardLink, source, false)) {
+                    check("硬链接", engine, source, hardLink, content);
+                }
+                if (createLink(symbolicLink, source, true)) {
+                    check("符号链接", engine, source, symbolicLink, content);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(symbolicLink);
+            Files.deleteIfExists(hardLink);
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(dir);
+        }
+        System.out.println("OK");
+    }
+
+    private static void check(String name, FileCopyEngine engine, Path source, Path target, byte[] content)
+            throws IOException {
+        long copied = engine.copy(source, target);
+        byte[] actual = Files.readAllBytes(source);
+        if (copied != 0 || !Arrays.equals(actual, content)) {
+            throw new AssertionError(name + "：copied = " + copied + ", source size = " + actual.length);
+        }
+        System.out.println(name + "：源文件未被截断");
+    }
+
+    /**
+     * Windows 下创建符号链接需要权限，文件系统也可能不支持链接，这时跳过对应的检查
+     */
+    private static boolean createLink(Path link, Path target, boolean symbolic) {
+        try {
+            if (!Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+                if (symbolic) {
+                    Files.createSymbolicLink(link, target);
+                } else {
+                    Files.createLink(link, target);
+                }
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("跳过" + (symbolic ? "符号链接" : "硬链接") + "：" + e);
+            return false;
+        }
+    }
+}
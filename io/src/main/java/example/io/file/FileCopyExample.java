@@ -12,6 +12,7 @@ import java.nio.file.Paths;
  *
  * @see     FileOutputStreamExample
  * @see     FileInputStreamExample
+ * @see     FileCopyEngine
  * @author  qiangj
  */
 public class FileCopyExample {
@@ -19,6 +20,7 @@ public class FileCopyExample {
         fileCopy();
         fileCopy2();
         fileCopy3();
+        fileCopy4();
     }
 
     /**
@@ -93,4 +95,20 @@ public class FileCopyExample {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * 方式 4：使用 {@link FileCopyEngine} copy 文件
+     * <p>
+     * 文件到文件使用 FileChannel.transferTo，数据不需要经过用户态的缓冲区，大文件时比前三种方式快得多。
+     * 性能对比见 {@link FileCopyBenchmark}。
+     */
+    private static void fileCopy4() {
+        String fileSourcePath = "D:\\aaa.png";
+        String fileTargetPath = "D:\\aaa（4）.png";
+        try {
+            new FileCopyEngine().copy(Paths.get(fileSourcePath), Paths.get(fileTargetPath));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
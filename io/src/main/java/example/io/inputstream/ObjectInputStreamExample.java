@@ -12,6 +12,7 @@ import java.nio.charset.StandardCharsets;
  *
  * @author  qiangj
  * @see     ObjectOutputStreamExample
+ * @see     example.io.codec.RecordReader
  */
 public class ObjectInputStreamExample {
     public static void main(String[] args) {
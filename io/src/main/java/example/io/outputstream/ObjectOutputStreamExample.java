@@ -9,6 +9,7 @@ import java.nio.charset.StandardCharsets;
  * java.io.ObjectOutputStream 示例：将对象序列化后保存到文件中
  *
  * @see ObjectInputStreamExample
+ * @see example.io.codec.RecordWriter
  */
 public class ObjectOutputStreamExample implements Serializable {
 
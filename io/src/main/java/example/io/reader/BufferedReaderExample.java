@@ -3,15 +3,19 @@ package example.io.reader;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * 使用 java.io.BufferedReader 读取文本文件
  * <p>
  * NOTE：关闭处理流时，只需关闭最外层的即可。
+ *
+ * @see ParallelLineProcessor
  */
 public class BufferedReaderExample {
     public static void main(String[] args) throws IOException {
         read();
+        readParallel();
     }
 
     /**
@@ -29,4 +33,23 @@ public class BufferedReaderExample {
         // 关闭流：只需要关闭最外层的处理流即可，应为底层他会自动的关闭节点流
         bufferedReader.close();
     }
+
+    /**
+     * 使用 ParallelLineProcessor 并行统计文件的行数和字符数：每个区间单独统计，最后把各区间的结果相加
+     */
+    private static void readParallel() throws IOException {
+        String filePath = "D:\\CodeRepositories\\java\\io\\src\\main\\java\\example\\reader\\BufferedReaderExample.java";
+        long[] counts = new ParallelLineProcessor().process(Paths.get(filePath),
+                () -> new long[2],
+                (result, line) -> {
+                    result[0]++;
+                    result[1] += line.length();
+                },
+                (left, right) -> {
+                    left[0] += right[0];
+                    left[1] += right[1];
+                    return left;
+                });
+        System.out.println("行数：" + counts[0] + "，字符数：" + counts[1]);
+    }
 }
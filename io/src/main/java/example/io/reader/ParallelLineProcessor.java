@@ -0,0 +1,174 @@
+package example.io.reader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * 并行按行处理文件：把文件拆分成以换行符对齐的字节区间，交给 ForkJoinPool 并行处理，最后合并各个区间的结果
+ * <p>
+ * 与 {@link BufferedReaderExample} 单线程逐行读取不同，这里每个区间都单独内存映射、一次性解码，扫描大文件时可以利用所有的 CPU 核心。
+ * <p>
+ * 结果的处理方式与 Collector 类似：
+ * <ul>
+ * <li> supplier：为每个区间创建一个结果容器
+ * <li> accumulator：把一行数据累加到结果容器中（传入的 CharSequence 只在回调期间有效）
+ * <li> combiner：合并两个区间的结果，左边区间的结果总是在前面
+ * </ul>
+ * NOTE：文件按 UTF-8 解码，由于区间的边界总是换行符，所以不会截断多字节字符。
+ *
+ * @see BufferedReaderExample
+ */
+public class ParallelLineProcessor {
+
+    /** 默认每个区间的大小：16 MB */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLineProcessor() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelLineProcessor(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public <R> R process(Path file, Supplier<R> supplier, BiConsumer<R, CharSequence> accumulator,
+                         BinaryOperator<R> combiner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LineTask<R> task = new LineTask<>(channel, 0, channel.size(), supplier, accumulator, combiner);
+            return pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 处理 [start, end) 区间的任务，start 总是位于一行的开头
+     */
+    private class LineTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Supplier<R> supplier;
+        private final BiConsumer<R, CharSequence> accumulator;
+        private final BinaryOperator<R> combiner;
+
+        LineTask(FileChannel channel, long start, long end, Supplier<R> supplier,
+                 BiConsumer<R, CharSequence> accumulator, BinaryOperator<R> combiner) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            try {
+                if (end - start > chunkSize) {
+                    long middle = nextLineStart(channel, start + (end - start) / 2, end);
+                    if (middle < end) {
+                        /* 将“大任务”拆解为两个以换行符对齐的“小任务” */
+                        LineTask<R> left = new LineTask<>(channel, start, middle, supplier, accumulator, combiner);
+                        LineTask<R> right = new LineTask<>(channel, middle, end, supplier, accumulator, combiner);
+                        left.fork();
+                        R rightResult = right.compute();
+                        return combiner.apply(left.join(), rightResult);
+                    }
+                }
+                return processRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private R processRange() throws IOException {
+            R result = supplier.get();
+            long position = start;
+            while (position < end) {
+                // 一个区间只有在找不到换行符时才会大于 chunkSize，这种情况下按 2 GB 的映射上限继续分段
+                long length = Math.min(end - position, Integer.MAX_VALUE);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                if (position + length < end) {
+                    length = lastLineEnd(bytes);
+                    if (length == 0) {
+                        throw new IOException("Line at position " + position + " is longer than " + Integer.MAX_VALUE + " bytes");
+                    }
+                    bytes.limit((int) length);
+                }
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+                int limit = chars.limit();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (chars.get(i) == '\n') {
+                        accumulator.accept(result, chars.subSequence(lineStart, trimCarriageReturn(chars, lineStart, i)));
+                        lineStart = i + 1;
+                    }
+                }
+                if (lineStart < limit) {
+                    accumulator.accept(result, chars.subSequence(lineStart, trimCarriageReturn(chars, lineStart, limit)));
+                }
+                position += length;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 返回 position 之后（包含 position）第一个换行符的下一个位置，找不到时返回 end
+     */
+    private static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        while (position < end) {
+            buffer.clear();
+            int readLength = channel.read(buffer, position);
+            if (readLength <= 0) {
+                break;
+            }
+            for (int i = 0; i < readLength && position + i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += readLength;
+        }
+        return end;
+    }
+
+    /**
+     * 返回 buffer 中最后一个换行符的下一个位置，找不到时返回 0
+     */
+    private static int lastLineEnd(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int trimCarriageReturn(CharBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+}
@@ -7,6 +7,8 @@ import java.nio.channels.FileChannel;
 
 /**
  * 示例
+ *
+ * @see MappedFileReader
  */
 public class FileChannelExample {
 
@@ -16,6 +18,8 @@ public class FileChannelExample {
 
     /**
      * 一个简单的示例：读取文件到 Buffer 中
+     * <p>
+     * NOTE：这里每次只读取 47 字节，并且逐个字节转换成 char（中文会乱码），只适合演示。读取大文件时使用 {@link MappedFileReader}。
      */
     private static void readFile() throws IOException {
         // 创建 Buffer
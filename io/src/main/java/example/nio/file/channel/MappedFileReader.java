@@ -0,0 +1,192 @@
+package example.nio.file.channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * 使用内存映射按窗口读取大文件
+ * <p>
+ * 单个 MappedByteBuffer 最多只能映射 Integer.MAX_VALUE（约 2 GB）字节，所以这里按 windowSize 大小依次映射文件的各个区域，
+ * 读取多 GB 的日志文件时也不需要把数据拷贝到堆内存中。
+ * <ul>
+ * <li> 按行读取时，窗口的结尾总是对齐到换行符，一行数据不会被拆到两个窗口中（一行比窗口还长时会自动扩大窗口）
+ * <li> 按记录读取时，窗口的大小对齐到记录长度的整数倍
+ * <li> 传给回调的 ByteBuffer / CharSequence 只是窗口的视图，只在回调期间有效，需要保存时要自己拷贝
+ * </ul>
+ *
+ * @see FileChannelExample
+ */
+public class MappedFileReader implements Closeable {
+
+    /** 默认窗口大小：64 MB */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 处理一段字节数据（一行或一条记录）
+     */
+    @FunctionalInterface
+    public interface ByteHandler {
+        void handle(ByteBuffer bytes) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private CharBuffer charBuffer;
+
+    public MappedFileReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileReader(Path path, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * 逐行处理文件，传入的 ByteBuffer 不包含行尾的 "\n" 或 "\r\n"
+     */
+    public void forEachLine(ByteHandler handler) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            MappedByteBuffer window = mapLineWindow(position, size);
+            int limit = window.limit();
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    handler.handle(slice(window, start, trimCarriageReturn(window, start, i)));
+                    start = i + 1;
+                }
+            }
+            // 文件最后一行没有换行符
+            if (start < limit) {
+                handler.handle(slice(window, start, trimCarriageReturn(window, start, limit)));
+            }
+            position += limit;
+        }
+    }
+
+    /**
+     * 逐行处理文件，每个窗口的数据会一次性解码成 UTF-8 字符，而不是逐个字节转换
+     */
+    public void forEachDecodedLine(Consumer<? super CharSequence> consumer) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            MappedByteBuffer window = mapLineWindow(position, size);
+            int windowLength = window.limit();
+            CharBuffer chars = decode(window);
+            int limit = chars.limit();
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (chars.get(i) == '\n') {
+                    consumer.accept(chars.subSequence(start, trimCarriageReturn(chars, start, i)));
+                    start = i + 1;
+                }
+            }
+            if (start < limit) {
+                consumer.accept(chars.subSequence(start, trimCarriageReturn(chars, start, limit)));
+            }
+            position += windowLength;
+        }
+    }
+
+    /**
+     * 按固定长度的记录处理文件，如果文件长度不是 recordSize 的整数倍，最后一条记录会不足 recordSize 字节
+     */
+    public void forEachRecord(int recordSize, ByteHandler handler) throws IOException {
+        if (recordSize <= 0) {
+            throw new IllegalArgumentException("recordSize must be positive: " + recordSize);
+        }
+        // 不超过 windowSize 和 recordSize 中较大的一个，不会溢出
+        int alignedWindow = Math.max(1, windowSize / recordSize) * recordSize;
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            int length = (int) Math.min(alignedWindow, size - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int start = 0; start < length; start += recordSize) {
+                handler.handle(slice(window, start, Math.min(start + recordSize, length)));
+            }
+            position += length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 映射从 position 开始的窗口，并把窗口的 limit 截断到最后一个换行符之后
+     */
+    private MappedByteBuffer mapLineWindow(long position, long size) throws IOException {
+        long length = Math.min(windowSize, size - position);
+        while (true) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return window;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') {
+                    window.limit(i + 1);
+                    return window;
+                }
+            }
+            // 窗口内没有换行符：一行比窗口还长，扩大窗口后重新映射
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("Line at position " + position + " is longer than " + Integer.MAX_VALUE + " bytes");
+            }
+            length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+        }
+    }
+
+    /**
+     * 窗口结尾总是换行符（或文件结尾），所以不会出现被截断的多字节字符
+     */
+    private CharBuffer decode(ByteBuffer window) throws CharacterCodingException {
+        int maxChars = (int) Math.min(Integer.MAX_VALUE, (long) window.remaining() * (long) decoder.maxCharsPerByte());
+        if (charBuffer == null || charBuffer.capacity() < maxChars) {
+            charBuffer = CharBuffer.allocate(maxChars);
+        }
+        charBuffer.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(window, charBuffer, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        decoder.flush(charBuffer);
+        charBuffer.flip();
+        return charBuffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(end);
+        duplicate.position(start);
+        return duplicate.slice();
+    }
+
+    private static int trimCarriageReturn(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    private static int trimCarriageReturn(CharBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+}
@@ -0,0 +1,109 @@
+package example.nio.file.channel;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 对比 {@link FileChannelExample} 中 47 字节 ByteBuffer 的读取方式、BufferedReaderExample 的按行读取和 {@link MappedFileReader}
+ * <p>
+ * 用法：java example.nio.file.channel.MappedFileReaderBenchmark [文件大小(MB)] [重复次数]
+ * <p>
+ * 为了避免输出本身成为瓶颈，这里只统计字符数/行数，不打印内容。
+ */
+public class MappedFileReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("mapped-reader-bench", ".log");
+        try {
+            createLogFile(file, sizeMb * 1024L * 1024);
+            for (int round = 1; round <= rounds; round++) {
+                System.out.println("---- 第 " + round + " 轮（" + sizeMb + " MB）----");
+                time("FileChannel + ByteBuffer(47)", () -> smallBufferLoop(file));
+                time("BufferedReader.readLine", () -> bufferedReaderLines(file));
+                time("MappedFileReader byte lines", () -> mappedByteLines(file));
+                time("MappedFileReader decoded lines", () -> mappedDecodedLines(file));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private interface ReadTask {
+        long run() throws IOException;
+    }
+
+    private static void time(String name, ReadTask task) throws IOException {
+        long start = System.nanoTime();
+        long result = task.run();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-32s %8.2f ms  (result = %d)%n", name, elapsed / 1_000_000.0, result);
+    }
+
+    private static void createLogFile(Path path, long size) throws IOException {
+        byte[] line = "2022-10-18 12:00:00 INFO  [main] 请求处理完成 example.nio.file.channel cost=15ms\n"
+                .getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            for (long written = 0; written < size; written += line.length) {
+                out.write(line);
+            }
+        }
+    }
+
+    /** 对应 FileChannelExample.readFile：逐字节转换成 char */
+    private static long smallBufferLoop(Path path) throws IOException {
+        long chars = 0;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer byteBuffer = ByteBuffer.allocate(47);
+            while (channel.read(byteBuffer) != -1) {
+                byteBuffer.flip();
+                while (byteBuffer.hasRemaining()) {
+                    if ((char) byteBuffer.get() != '\0') {
+                        chars++;
+                    }
+                }
+                byteBuffer.clear();
+            }
+        }
+        return chars;
+    }
+
+    /** 对应 BufferedReaderExample.read */
+    private static long bufferedReaderLines(Path path) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path.toFile()))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static long mappedByteLines(Path path) throws IOException {
+        long[] lines = {0};
+        try (MappedFileReader reader = new MappedFileReader(path)) {
+            reader.forEachLine(line -> lines[0]++);
+        }
+        return lines[0];
+    }
+
+    private static long mappedDecodedLines(Path path) throws IOException {
+        long[] lines = {0};
+        try (MappedFileReader reader = new MappedFileReader(path)) {
+            reader.forEachDecodedLine(line -> lines[0]++);
+        }
+        return lines[0];
+    }
+}
@@ -0,0 +1,536 @@
+package reflection;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 每个类一份的反射元数据缓存（ClassValue），
+ * 方法、构造器、字段在第一次使用时解析一次：查找、setAccessible()、转换成 MethodHandle，之后直接复用。
+ * <p>
+ * 每个成员都提供两种调用方式：
+ * 1. handle()/getter()/setter()：原始类型的 MethodHandle，调用方知道参数类型时用 invokeExact()，没有装箱；
+ *    但只有保存在 static final 字段中时，JIT 才会把它当作常量内联，速度接近直接调用；
+ *    保存在普通字段或局部变量中的 MethodHandle 不会被内联，比 Method.invoke() 还慢；
+ * 2. invoke()/newInstance()/get()/set()：参数和返回值都是 Object，与 Method.invoke()、Field.get() 用法相同，适合通用的映射代码：
+ *    - 方法和构造器：用 LambdaMetafactory 为每个成员生成一个直接调用它的类（CallN 接口的实现），
+ *      调用点只用到一个成员时会被内联，速度接近直接调用；
+ *      生成的类只会把参数强制转换成参数类型（基本类型为包装类型）再拆箱，不会像 Method.invoke() 那样做基本类型的拓宽，
+ *      所以只有 target 和每个参数的类型都能直接匹配时才走 CallN（例如 long 参数要求传入 Long），
+ *      其余情况（Integer 传给 long 参数、类型不对、null 传给基本类型等）以及不能生成 CallN 时
+ *      （返回 void、参数超过 CallN 的个数、JDK 的类不对本模块开放等）都退回 Method.invoke()/Constructor.newInstance()，
+ *      所以结果和异常（拓宽、IllegalArgumentException、NullPointerException）总是与它们相同；
+ *    - 字段：LambdaMetafactory 不支持字段，使用已经 setAccessible() 的 Field，速度与 Field.get() 相同，省去的只是查找的开销。
+ * <p>
+ * NOTE：本模块的目标版本是 Java 8，没有 VarHandle，字段的 getter()/setter() 是 unreflectGetter()/unreflectSetter() 得到的 MethodHandle；
+ * 非 public 的成员需要 Java 9 的 MethodHandles.privateLookupIn()（通过反射调用）才能生成 CallN，在 Java 8 上退回反射。
+ */
+public final class ClassMetadata {
+
+    private static final ClassValue<ClassMetadata> CACHE = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    /* CALLS[n] 是有 n 个参数的 CallN 接口 */
+    private static final Class<?>[] CALLS = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class};
+
+    /*
+     * LambdaMetafactory 生成的类实现这些接口，生成的类可能位于被调用的类所在的包中，所以接口必须是 public 的。
+     * 实例方法的第一个参数是 target。
+     */
+
+    public interface Call0 {
+        Object call() throws Throwable;
+    }
+
+    public interface Call1 {
+        Object call(Object a0) throws Throwable;
+    }
+
+    public interface Call2 {
+        Object call(Object a0, Object a1) throws Throwable;
+    }
+
+    public interface Call3 {
+        Object call(Object a0, Object a1, Object a2) throws Throwable;
+    }
+
+    public interface Call4 {
+        Object call(Object a0, Object a1, Object a2, Object a3) throws Throwable;
+    }
+
+    public static ClassMetadata of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    private final Class<?> type;
+    private volatile List<Method> methods;
+    private volatile List<Constructor<?>> constructors;
+    private final ConcurrentMap<Signature, MethodInvoker> methodInvokers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Signature, ConstructorInvoker> constructorInvokers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FieldAccessor> fieldAccessors = new ConcurrentHashMap<>();
+
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+    }
+
+    public Class<?> type() {
+        return type;
+    }
+
+    /**
+     * 所有 public 方法（含基类方法），即 getMethods()
+     */
+    public List<Method> methods() {
+        List<Method> result = methods;
+        if (result == null) {
+            methods = result = Collections.unmodifiableList(Arrays.asList(type.getMethods()));
+        }
+        return result;
+    }
+
+    /**
+     * 所有构造器，即 getDeclaredConstructors()
+     */
+    public List<Constructor<?>> constructors() {
+        List<Constructor<?>> result = constructors;
+        if (result == null) {
+            constructors = result = Collections.unmodifiableList(Arrays.asList(type.getDeclaredConstructors()));
+        }
+        return result;
+    }
+
+    /**
+     * 先找 public 方法（含基类方法），再沿着基类查找非 public 的方法
+     */
+    public MethodInvoker method(String name, Class<?>... parameterTypes)
+            throws NoSuchMethodException, IllegalAccessException {
+        Signature signature = new Signature(name, parameterTypes);
+        MethodInvoker invoker = methodInvokers.get(signature);
+        if (invoker == null) {
+            invoker = new MethodInvoker(findMethod(name, parameterTypes));
+            MethodInvoker previous = methodInvokers.putIfAbsent(signature, invoker);
+            if (previous != null) {
+                invoker = previous;
+            }
+        }
+        return invoker;
+    }
+
+    public ConstructorInvoker constructor(Class<?>... parameterTypes)
+            throws NoSuchMethodException, IllegalAccessException {
+        Signature signature = new Signature("<init>", parameterTypes);
+        ConstructorInvoker invoker = constructorInvokers.get(signature);
+        if (invoker == null) {
+            invoker = new ConstructorInvoker(type.getDeclaredConstructor(parameterTypes));
+            ConstructorInvoker previous = constructorInvokers.putIfAbsent(signature, invoker);
+            if (previous != null) {
+                invoker = previous;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * 沿着基类查找字段，子类的字段遮蔽基类的同名字段
+     */
+    public FieldAccessor field(String name) throws NoSuchFieldException, IllegalAccessException {
+        FieldAccessor accessor = fieldAccessors.get(name);
+        if (accessor == null) {
+            accessor = new FieldAccessor(findField(name));
+            FieldAccessor previous = fieldAccessors.putIfAbsent(name, accessor);
+            if (previous != null) {
+                accessor = previous;
+            }
+        }
+        return accessor;
+    }
+
+    private Method findMethod(String name, Class<?>[] parameterTypes) throws NoSuchMethodException {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                try {
+                    return c.getDeclaredMethod(name, parameterTypes);
+                } catch (NoSuchMethodException ignored) {
+                    // 继续查找基类
+                }
+            }
+            throw e;
+        }
+    }
+
+    private Field findField(String name) throws NoSuchFieldException {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+                // 继续查找基类
+            }
+        }
+        return type.getField(name);
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            /* Java 9 之前没有 privateLookupIn() */
+            return null;
+        }
+    }
+
+    /**
+     * 用 LambdaMetafactory 生成直接调用 member 的 CallN 实例，不能生成时返回 null
+     */
+    private static Object call(Executable member, MethodType type) {
+        if (type.returnType() == void.class || type.parameterCount() >= CALLS.length) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup;
+            if (Modifier.isPublic(member.getModifiers()) && Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+                lookup = LOOKUP;
+            } else if (PRIVATE_LOOKUP_IN != null) {
+                lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, member.getDeclaringClass(), LOOKUP);
+            } else {
+                return null;
+            }
+            MethodHandle impl = member instanceof Method
+                    ? lookup.unreflect((Method) member)
+                    : lookup.unreflectConstructor((Constructor<?>) member);
+            Class<?> call = CALLS[type.parameterCount()];
+            CallSite site = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(call),
+                    MethodType.genericMethodType(type.parameterCount()), impl, type.wrap());
+            return site.getTarget().invoke();
+        } catch (Exception | LinkageError e) {
+            /* 例如：JDK 的类不对本模块开放，被调用的类的类加载器看不到 CallN 接口 */
+            return null;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /* 参数类型，基本类型换成包装类型：CallN 只接受这些类型的参数 */
+    private static Class<?>[] boxed(Class<?>[] parameterTypes) {
+        return MethodType.methodType(void.class, parameterTypes).wrap().parameterArray();
+    }
+
+    /**
+     * 每个参数都能被 CallN 直接接受时返回 true：基本类型参数的实参正好是对应的包装类型，引用类型参数的实参为 null 或者是它的实例
+     */
+    private static boolean matches(Class<?>[] parameterTypes, Class<?>[] boxed, Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (parameterTypes[i].isPrimitive()
+                    ? arg == null || arg.getClass() != boxed[i]
+                    : arg != null && !parameterTypes[i].isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object[] arguments(Object[] args, int count) {
+        Object[] result = args == null ? new Object[0] : args;
+        if (result.length != count) {
+            throw new IllegalArgumentException("wrong number of arguments: " + result.length + ", expected " + count);
+        }
+        return result;
+    }
+
+    /* 只在解析时调用一次，public 类的 public 成员不需要 */
+    private static <T extends AccessibleObject> T accessible(T member, int modifiers, Class<?> declaringClass) {
+        if (!Modifier.isPublic(modifiers) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            member.setAccessible(true);
+        }
+        return member;
+    }
+
+    /**
+     * 方法的调用器
+     */
+    public static final class MethodInvoker {
+        private final Method method;
+        private final MethodHandle handle;
+        private final boolean isStatic;
+        private final Class<?>[] parameterTypes;
+        private final Class<?>[] boxed;
+        /* CallN 实例，不能生成时为 null */
+        private final Object call;
+
+        private MethodInvoker(Method method) throws IllegalAccessException {
+            this.method = method;
+            handle = LOOKUP.unreflect(accessible(method, method.getModifiers(), method.getDeclaringClass()));
+            isStatic = Modifier.isStatic(method.getModifiers());
+            parameterTypes = method.getParameterTypes();
+            boxed = boxed(parameterTypes);
+            call = call(method, handle.type());
+        }
+
+        public Method method() {
+            return method;
+        }
+
+        /**
+         * 原始类型的 MethodHandle，例如 Point.getX() 的类型是 (Point)int，
+         * 可以用 {@code (int) handle.invokeExact(point)} 调用
+         */
+        public MethodHandle handle() {
+            return handle;
+        }
+
+        /**
+         * 与 Method.invoke() 相同：静态方法忽略 target，void 方法返回 null，基本类型的参数可以拓宽（Integer 传给 long），
+         * 参数类型不对时抛出 IllegalArgumentException，实例方法的 target 为 null 时抛出 NullPointerException；
+         * 唯一的区别是被调用的方法抛出的异常原样抛出（不会包装成 InvocationTargetException）
+         */
+        public Object invoke(Object target, Object... args) throws Throwable {
+            Object[] a = arguments(args, parameterTypes.length);
+            if (call == null || !matches(parameterTypes, boxed, a)
+                    || (!isStatic && !method.getDeclaringClass().isInstance(target))) {
+                try {
+                    return method.invoke(target, a);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            if (!isStatic) {
+                switch (a.length) {
+                    case 0:
+                        return ((Call1) call).call(target);
+                    case 1:
+                        return ((Call2) call).call(target, a[0]);
+                    case 2:
+                        return ((Call3) call).call(target, a[0], a[1]);
+                    default:
+                        return ((Call4) call).call(target, a[0], a[1], a[2]);
+                }
+            }
+            switch (a.length) {
+                case 0:
+                    return ((Call0) call).call();
+                case 1:
+                    return ((Call1) call).call(a[0]);
+                case 2:
+                    return ((Call2) call).call(a[0], a[1]);
+                case 3:
+                    return ((Call3) call).call(a[0], a[1], a[2]);
+                default:
+                    return ((Call4) call).call(a[0], a[1], a[2], a[3]);
+            }
+        }
+    }
+
+    /**
+     * 构造器的调用器
+     */
+    public static final class ConstructorInvoker {
+        private final Constructor<?> constructor;
+        private final MethodHandle handle;
+        private final Class<?>[] parameterTypes;
+        private final Class<?>[] boxed;
+        /* CallN 实例，不能生成时为 null */
+        private final Object call;
+
+        private ConstructorInvoker(Constructor<?> constructor) throws IllegalAccessException {
+            this.constructor = constructor;
+            handle = LOOKUP.unreflectConstructor(
+                    accessible(constructor, constructor.getModifiers(), constructor.getDeclaringClass()));
+            parameterTypes = constructor.getParameterTypes();
+            boxed = boxed(parameterTypes);
+            call = Modifier.isAbstract(constructor.getDeclaringClass().getModifiers())
+                    ? null
+                    : call(constructor, handle.type());
+        }
+
+        public Constructor<?> constructor() {
+            return constructor;
+        }
+
+        /**
+         * 原始类型的 MethodHandle，例如 Point(int, int) 的类型是 (int,int)Point
+         */
+        public MethodHandle handle() {
+            return handle;
+        }
+
+        /**
+         * 与 Constructor.newInstance() 相同（参数的拓宽和检查见 {@link MethodInvoker#invoke}），
+         * 构造器抛出的异常原样抛出（不会包装成 InvocationTargetException）
+         */
+        public Object newInstance(Object... args) throws Throwable {
+            Object[] a = arguments(args, parameterTypes.length);
+            if (call == null || !matches(parameterTypes, boxed, a)) {
+                try {
+                    return constructor.newInstance(a);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            switch (a.length) {
+                case 0:
+                    return ((Call0) call).call();
+                case 1:
+                    return ((Call1) call).call(a[0]);
+                case 2:
+                    return ((Call2) call).call(a[0], a[1]);
+                case 3:
+                    return ((Call3) call).call(a[0], a[1], a[2]);
+                default:
+                    return ((Call4) call).call(a[0], a[1], a[2], a[3]);
+            }
+        }
+    }
+
+    /**
+     * 字段的访问器，静态字段也接受一个（被忽略的）target 参数，与 Field.get() 一致；
+     * 与 Field.set() 一样，非静态的 final 字段在 setAccessible(true) 之后也可以修改，静态的 final 字段不能修改。
+     * get()/set()/getInt() 等方法直接使用已经 setAccessible() 的 Field，需要接近直接访问的速度时，
+     * 把 getter()/setter() 保存在 static final 字段中再 invokeExact()
+     */
+    public static final class FieldAccessor {
+        private final Field field;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private FieldAccessor(Field field) throws IllegalAccessException {
+            this.field = field;
+            int modifiers = field.getModifiers();
+            boolean isStatic = Modifier.isStatic(modifiers);
+            if (Modifier.isFinal(modifiers)) {
+                /* unreflectSetter() 要求 final 字段已经 setAccessible(true) */
+                field.setAccessible(true);
+            } else {
+                accessible(field, modifiers, field.getDeclaringClass());
+            }
+            Class<?> t = field.getType();
+            MethodHandle get = LOOKUP.unreflectGetter(field);
+            if (isStatic) {
+                get = MethodHandles.dropArguments(get, 0, Object.class);
+            }
+            getter = get.asType(MethodType.methodType(t, Object.class));
+            if (isStatic && Modifier.isFinal(modifiers)) {
+                setter = null;
+            } else {
+                MethodHandle set = LOOKUP.unreflectSetter(field);
+                if (isStatic) {
+                    set = MethodHandles.dropArguments(set, 0, Object.class);
+                }
+                setter = set.asType(MethodType.methodType(void.class, Object.class, t));
+            }
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        /**
+         * 类型为 (Object)T 的 MethodHandle，T 是字段的类型
+         */
+        public MethodHandle getter() {
+            return getter;
+        }
+
+        /**
+         * 类型为 (Object,T)void 的 MethodHandle，T 是字段的类型
+         */
+        public MethodHandle setter() throws IllegalAccessException {
+            return settable(setter);
+        }
+
+        public Object get(Object target) throws IllegalAccessException {
+            return field.get(target);
+        }
+
+        public void set(Object target, Object value) throws IllegalAccessException {
+            settable(setter);
+            field.set(target, value);
+        }
+
+        /* 以下方法与 Field 的同名方法相同，字段的类型不能转换时抛出 IllegalArgumentException */
+
+        public int getInt(Object target) throws IllegalAccessException {
+            return field.getInt(target);
+        }
+
+        public void setInt(Object target, int value) throws IllegalAccessException {
+            settable(setter);
+            field.setInt(target, value);
+        }
+
+        public long getLong(Object target) throws IllegalAccessException {
+            return field.getLong(target);
+        }
+
+        public void setLong(Object target, long value) throws IllegalAccessException {
+            settable(setter);
+            field.setLong(target, value);
+        }
+
+        public double getDouble(Object target) throws IllegalAccessException {
+            return field.getDouble(target);
+        }
+
+        public void setDouble(Object target, double value) throws IllegalAccessException {
+            settable(setter);
+            field.setDouble(target, value);
+        }
+
+        private MethodHandle settable(MethodHandle handle) throws IllegalAccessException {
+            if (handle == null) {
+                throw new IllegalAccessException("static final field: " + field);
+            }
+            return handle;
+        }
+    }
+
+    private static final class Signature {
+        private final String name;
+        private final Class<?>[] parameterTypes;
+
+        Signature(String name, Class<?>[] parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature that = (Signature) o;
+            return name.equals(that.name) && Arrays.equals(parameterTypes, that.parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + Arrays.hashCode(parameterTypes);
+        }
+    }
+}
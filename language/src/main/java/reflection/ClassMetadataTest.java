@@ -0,0 +1,103 @@
+package reflection;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 检查 ClassMetadata 的 invoke()/newInstance() 与 Method.invoke()/Constructor.newInstance() 的结果和异常相同：
+ * 基本类型参数的拓宽（Integer 传给 long）、参数类型不对、null 传给基本类型参数、target 为 null 或类型不对
+ */
+public class ClassMetadataTest {
+
+    public static class Counter {
+        private long total;
+
+        public Counter(long total) {
+            this.total = total;
+        }
+
+        public long add(long n) {
+            return total += n;
+        }
+
+        public static double scale(double value, int factor) {
+            return value * factor;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        ClassMetadata metadata = ClassMetadata.of(Counter.class);
+        ClassMetadata.MethodInvoker add = metadata.method("add", long.class);
+        ClassMetadata.MethodInvoker scale = metadata.method("scale", double.class, int.class);
+        ClassMetadata.ConstructorInvoker init = metadata.constructor(long.class);
+        Method addMethod = Counter.class.getMethod("add", long.class);
+        Method scaleMethod = Counter.class.getMethod("scale", double.class, int.class);
+        Constructor<Counter> constructor = Counter.class.getConstructor(long.class);
+
+        check("add(5L)", add, addMethod, new Counter(1), 5L);
+        check("add(Integer 5)", add, addMethod, new Counter(1), 5);
+        check("add((short) 5)", add, addMethod, new Counter(1), (short) 5);
+        check("add('a')", add, addMethod, new Counter(1), 'a');
+        check("add(5.0)", add, addMethod, new Counter(1), 5.0);
+        check("add(\"5\")", add, addMethod, new Counter(1), "5");
+        check("add(null)", add, addMethod, new Counter(1), (Object) null);
+        check("null.add(5L)", add, addMethod, null, 5L);
+        check("\"x\".add(5L)", add, addMethod, "x", 5L);
+        check("scale(2.0, 3)", scale, scaleMethod, null, 2.0, 3);
+        check("scale(Integer 2, 3)", scale, scaleMethod, null, 2, 3);
+        check("scale(2.0f, (byte) 3)", scale, scaleMethod, null, 2.0f, (byte) 3);
+        check("scale(2.0, 3L)", scale, scaleMethod, null, 2.0, 3L);
+        check("new Counter(7L)", init, constructor, 7L);
+        check("new Counter(Integer 7)", init, constructor, 7);
+        check("new Counter(\"7\")", init, constructor, "7");
+        System.out.println("OK");
+    }
+
+    private static void check(String name, ClassMetadata.MethodInvoker invoker, Method method,
+                              Object target, Object... args) throws Exception {
+        Object expected = outcome(() -> unwrap(() -> method.invoke(copy(target), args)));
+        Object actual = outcome(() -> invoker.invoke(copy(target), args));
+        compare(name, expected, actual);
+    }
+
+    private static void check(String name, ClassMetadata.ConstructorInvoker invoker, Constructor<Counter> constructor,
+                              Object... args) throws Exception {
+        Object expected = outcome(() -> unwrap(() -> constructor.newInstance(args).total));
+        Object actual = outcome(() -> ((Counter) invoker.newInstance(args)).total);
+        compare(name, expected, actual);
+    }
+
+    private static void compare(String name, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(name + "：expected " + expected + ", actual " + actual);
+        }
+        System.out.println(name + " -> " + actual);
+    }
+
+    /* 每次调用都用新的 Counter，两种调用方式的结果才能比较 */
+    private static Object copy(Object target) {
+        return target instanceof Counter ? new Counter(((Counter) target).total) : target;
+    }
+
+    private interface Call {
+        Object call() throws Throwable;
+    }
+
+    private static Object unwrap(Call call) throws Throwable {
+        try {
+            return call.call();
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /* 返回值，或者抛出的异常的类名 */
+    private static Object outcome(Call call) {
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+}
@@ -1,33 +1,31 @@
 package reflection;
 
-import java.lang.reflect.Field;
-
+/**
+ * 字段通过 ClassMetadata 访问：第一次使用时查找并 setAccessible()，之后直接复用，不需要每次都 getDeclaredField()
+ */
 public class ModifyingPrivateFields {
 
     public static void main(String[] args) throws NoSuchFieldException, IllegalAccessException {
         ModifyingPrivateField pf = new ModifyingPrivateField();
         System.out.println(pf);
 
-        Class<? extends ModifyingPrivateField> cls = pf.getClass();
+        ClassMetadata metadata = ClassMetadata.of(pf.getClass());
 
-        Field i = cls.getDeclaredField("i");
-        i.setAccessible(true);
+        ClassMetadata.FieldAccessor i = metadata.field("i");
         System.out.println(i.getInt(pf));
         i.setInt(pf, 47);
         System.out.println(pf);
 
         System.out.println();
 
-        Field s = cls.getDeclaredField("s");
-        s.setAccessible(true);
+        ClassMetadata.FieldAccessor s = metadata.field("s");
         System.out.println(s.get(pf));
         s.set(pf, "[Modify]private final String s");
         System.out.println(pf);
 
         System.out.println();
 
-        Field s2 = cls.getDeclaredField("s2");
-        s2.setAccessible(true);
+        ClassMetadata.FieldAccessor s2 = metadata.field("s2");
         System.out.println(s2.get(pf));
         s2.set(pf, "[Modify]private final String s2");
         System.out.println(pf);
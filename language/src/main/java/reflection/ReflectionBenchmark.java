@@ -0,0 +1,181 @@
+package reflection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * 比较直接调用、Method.invoke()/Field.get() 与 ClassMetadata 的每次调用耗时。
+ * 参数：调用次数(默认 100_000_000)、轮数(默认 5)；
+ * “每次查找”是 ShowMethods、ModifyingPrivateFields 原来的写法：每次都 getDeclaredField() + setAccessible()，只调用 1/100 的次数。
+ */
+public class ReflectionBenchmark {
+
+    static class Point {
+        private int x;
+
+        Point(int x) {
+            this.x = x;
+        }
+
+        public int getX() {
+            return x;
+        }
+    }
+
+    /* 保存在 static final 字段中的 MethodHandle 是常量，JIT 可以把它内联成直接调用 */
+    private static final MethodHandle GET_X;
+    private static final MethodHandle X_GETTER;
+
+    static {
+        try {
+            GET_X = ClassMetadata.of(Point.class).method("getX").handle();
+            X_GETTER = ClassMetadata.of(Point.class).field("x").getter();
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Point[] points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(i);
+        }
+        Method method = Point.class.getMethod("getX");
+        Field field = Point.class.getDeclaredField("x");
+        field.setAccessible(true);
+        ClassMetadata.MethodInvoker invoker = ClassMetadata.of(Point.class).method("getX");
+        ClassMetadata.FieldAccessor accessor = ClassMetadata.of(Point.class).field("x");
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            report("direct getX()", start, calls, direct(points, calls));
+            start = System.nanoTime();
+            report("Method.invoke()", start, calls, methodInvoke(method, points, calls));
+            start = System.nanoTime();
+            report("MethodInvoker.invoke()", start, calls, invoke(invoker, points, calls));
+            start = System.nanoTime();
+            report("MethodInvoker.handle().invokeExact()", start, calls, invokeExact(invoker.handle(), points, calls));
+            start = System.nanoTime();
+            report("static final handle.invokeExact()", start, calls, constantInvokeExact(points, calls));
+            start = System.nanoTime();
+            report("Field.getInt()", start, calls, fieldGetInt(field, points, calls));
+            start = System.nanoTime();
+            report("Field.get()", start, calls, fieldGet(field, points, calls));
+            start = System.nanoTime();
+            report("FieldAccessor.getInt()", start, calls, getInt(accessor, points, calls));
+            start = System.nanoTime();
+            report("FieldAccessor.get()", start, calls, get(accessor, points, calls));
+            start = System.nanoTime();
+            report("static final getter.invokeExact()", start, calls, constantGetter(points, calls));
+            start = System.nanoTime();
+            report("getDeclaredField() every call", start, calls / 100, lookupEveryCall(points, calls / 100));
+            start = System.nanoTime();
+            report("ClassMetadata.of().field() every call", start, calls / 100, cachedEveryCall(points, calls / 100));
+        }
+    }
+
+    private static long direct(Point[] points, int calls) {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += points[i & 1023].getX();
+        }
+        return sum;
+    }
+
+    private static long methodInvoke(Method method, Point[] points, int calls) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (Integer) method.invoke(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long invoke(ClassMetadata.MethodInvoker invoker, Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (Integer) invoker.invoke(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long invokeExact(MethodHandle handle, Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (int) handle.invokeExact(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long constantInvokeExact(Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (int) GET_X.invokeExact(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long constantGetter(Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (int) X_GETTER.invokeExact((Object) points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long fieldGetInt(Field field, Point[] points, int calls) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += field.getInt(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long fieldGet(Field field, Point[] points, int calls) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (Integer) field.get(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long getInt(ClassMetadata.FieldAccessor accessor, Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += accessor.getInt(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long get(ClassMetadata.FieldAccessor accessor, Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += (Integer) accessor.get(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long lookupEveryCall(Point[] points, int calls) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            Field f = points[i & 1023].getClass().getDeclaredField("x");
+            f.setAccessible(true);
+            sum += f.getInt(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static long cachedEveryCall(Point[] points, int calls) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += ClassMetadata.of(points[i & 1023].getClass()).field("x").getInt(points[i & 1023]);
+        }
+        return sum;
+    }
+
+    private static void report(String name, long start, int calls, long result) {
+        System.out.printf("  %-40s %7.2f ns  (%d)%n", name, (double) (System.nanoTime() - start) / calls, result);
+    }
+}
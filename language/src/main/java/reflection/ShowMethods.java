@@ -5,19 +5,18 @@ import java.lang.reflect.Method;
 
 /**
  * 一个工具类，用于提取指定类的所有方法（含基类方法）
+ * （方法和构造器列表缓存在 ClassMetadata 中，同一个类只查找一次）
  */
 public class ShowMethods {
 
     public static void main(String[] args) {
 //        args = new String[] {"java.util.ArrayList"};
         try {
-            Class<?> cls = Class.forName(args[0]);
-            Method[] methods = cls.getMethods();
-            Constructor<?>[] constructors = cls.getDeclaredConstructors();
-            for (Method method : methods) {
+            ClassMetadata metadata = ClassMetadata.of(Class.forName(args[0]));
+            for (Method method : metadata.methods()) {
                 System.out.println(method.toString());
             }
-            for (Constructor<?> constructor : constructors) {
+            for (Constructor<?> constructor : metadata.constructors()) {
                 System.out.println(constructor.toString());
             }
         } catch (ClassNotFoundException e) {
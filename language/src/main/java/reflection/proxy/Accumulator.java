@@ -0,0 +1,12 @@
+package reflection.proxy;
+
+/**
+ * 一个简单的“热点”服务接口，用于比较各种代理方式的开销
+ */
+@GenerateProxy
+public interface Accumulator {
+
+    long add(int x);
+
+    long total();
+}
@@ -4,6 +4,10 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
+/**
+ * NOTE：每次调用都会装箱参数、拼接日志字符串并通过 Method.invoke() 调用，
+ * 对热点接口可以改用编译时生成的代理，见 GenerateProxy 和 GeneratedProxyDemo
+ */
 public class DynamicProxyHandler implements InvocationHandler {
 
     private Object proxied;
@@ -0,0 +1,21 @@
+package reflection.proxy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在接口上，编译时由 {@link reflection.proxy.processor.ProxyProcessor} 生成这个接口的代理类：
+ * 代理类直接调用被代理对象的方法，并在调用前后调用类型化的 Hooks（参数、返回值都是原来的类型），
+ * 没有 Proxy + InvocationHandler 那样的 Object[] 装箱和 Method.invoke()。
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateProxy {
+
+    /**
+     * 代理类的简单类名，默认为接口名 + "Proxy"
+     */
+    String value() default "";
+}
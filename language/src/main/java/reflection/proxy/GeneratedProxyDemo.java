@@ -0,0 +1,50 @@
+package reflection.proxy;
+
+/**
+ * 编译时生成的代理 Demo，与 SimpleDynamicProxy 做同样的事情：
+ * InterfaceProxy、AccumulatorProxy 由 ProxyProcessor 根据 @GenerateProxy 生成，
+ * 日志写在类型化的 Hooks 方法中，只有被覆盖的方法才会做额外的工作，
+ * 也不再需要像 MethodSelector 那样在 invoke() 中比较方法名。
+ */
+public class GeneratedProxyDemo {
+
+    private static void consumer(Interface iface) {
+        iface.doSomething();
+    }
+
+    public static void main(String[] args) {
+        RealObject real = new RealObject();
+        consumer(real);
+
+        Interface o = new InterfaceProxy(real, new InterfaceProxy.Hooks() {
+            @Override
+            public void beforeDoSomething() {
+                System.out.println("InterfaceProxy.doSomething() 执行");
+            }
+        });
+        System.out.println(o.getClass().getName());
+        consumer(o);
+
+        Accumulator accumulator = new AccumulatorProxy(new RealAccumulator(), new AccumulatorProxy.Hooks() {
+            @Override
+            public void afterAdd(long result, int x) {
+                if (result > 100) {
+                    System.out.println("add(" + x + ") 之后 total 超过了 100: " + result);
+                }
+            }
+        });
+        for (int i = 1; i <= 15; i++) {
+            accumulator.add(i);
+        }
+        System.out.println(accumulator.total());
+    }
+}
+/* Output:
+RealObject.doSomething() 执行
+reflection.proxy.InterfaceProxy
+InterfaceProxy.doSomething() 执行
+RealObject.doSomething() 执行
+add(14) 之后 total 超过了 100: 105
+add(15) 之后 total 超过了 100: 120
+120
+ */
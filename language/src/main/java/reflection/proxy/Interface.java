@@ -1,5 +1,6 @@
 package reflection.proxy;
 
+@GenerateProxy
 public interface Interface {
 
     void doSomething();
@@ -0,0 +1,92 @@
+package reflection.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+ * 比较直接调用、生成的代理（无 Hooks / 计数 Hooks）与 java.lang.reflect.Proxy 的每次调用耗时。
+ * 参数：调用次数(默认 100_000_000)、轮数(默认 5)；
+ * 反射代理分为只调用 Method.invoke() 和像 DynamicProxyHandler 那样拼接日志字符串（不打印）两种。
+ */
+public class ProxyBenchmark {
+
+    private static long logged;
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        for (int round = 1; round <= rounds; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            report("direct", start, calls, run(new RealAccumulator(), calls));
+
+            start = System.nanoTime();
+            report("generated, no hooks", start, calls, runNoHooks(new AccumulatorProxy(new RealAccumulator()), calls));
+
+            long[] count = new long[1];
+            AccumulatorProxy counting = new AccumulatorProxy(new RealAccumulator(), new AccumulatorProxy.Hooks() {
+                @Override
+                public void afterAdd(long result, int x) {
+                    count[0]++;
+                }
+            });
+            start = System.nanoTime();
+            report("generated, counting hook", start, calls, runCountingHook(counting, calls));
+
+            RealAccumulator real = new RealAccumulator();
+            InvocationHandler invoke = (proxy, method, a) -> method.invoke(real, a);
+            start = System.nanoTime();
+            report("reflective proxy", start, calls, runReflective(newProxy(invoke), calls));
+
+            RealAccumulator logReal = new RealAccumulator();
+            InvocationHandler logging = (proxy, method, a) -> {
+                String line = "invoke() 执行，proxy：" + proxy.getClass().getName()
+                        + ", method: " + method + ", args: " + Arrays.toString(a);
+                logged += line.length();
+                return method.invoke(logReal, a);
+            };
+            /* 拼接字符串很慢，只调用 1/100 的次数 */
+            start = System.nanoTime();
+            report("reflective proxy, logging", start, calls / 100, runReflective(newProxy(logging), calls / 100));
+        }
+    }
+
+    private static Accumulator newProxy(InvocationHandler handler) {
+        return (Accumulator) Proxy.newProxyInstance(Accumulator.class.getClassLoader(),
+                new Class<?>[]{Accumulator.class}, handler);
+    }
+
+    /* 每种类型、每种 Hooks 配置一个循环，避免同一个调用点变成多态调用 */
+    private static long run(RealAccumulator accumulator, int calls) {
+        for (int i = 0; i < calls; i++) {
+            accumulator.add(i & 0xFF);
+        }
+        return accumulator.total();
+    }
+
+    private static long runNoHooks(AccumulatorProxy accumulator, int calls) {
+        for (int i = 0; i < calls; i++) {
+            accumulator.add(i & 0xFF);
+        }
+        return accumulator.total();
+    }
+
+    private static long runCountingHook(AccumulatorProxy accumulator, int calls) {
+        for (int i = 0; i < calls; i++) {
+            accumulator.add(i & 0xFF);
+        }
+        return accumulator.total();
+    }
+
+    private static long runReflective(Accumulator accumulator, int calls) {
+        for (int i = 0; i < calls; i++) {
+            accumulator.add(i & 0xFF);
+        }
+        return accumulator.total();
+    }
+
+    private static void report(String name, long start, int calls, long result) {
+        System.out.printf("  %-28s %7.2f ns  (%d)%n", name, (double) (System.nanoTime() - start) / calls, result);
+    }
+}
@@ -0,0 +1,16 @@
+package reflection.proxy;
+
+public class RealAccumulator implements Accumulator {
+
+    private long total;
+
+    @Override
+    public long add(int x) {
+        return total += x;
+    }
+
+    @Override
+    public long total() {
+        return total;
+    }
+}
@@ -0,0 +1,268 @@
+package reflection.proxy.processor;
+
+import reflection.proxy.GenerateProxy;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 为 @GenerateProxy 标注的接口生成代理类，与 IfaceExtractorProcessor 一样，是在编译时生成源代码。
+ * <p>
+ * 对于接口 Foo 中的方法 {@code R bar(A a, B b)}，生成的 FooProxy 中有：
+ * <pre>
+ * public interface Hooks {
+ *     default void beforeBar(A a, B b) {}
+ *     default void afterBar(R result, A a, B b) {}
+ *     default void failedBar(Throwable e, A a, B b) {}
+ * }
+ * public R bar(A a, B b) {
+ *     this.hooks.beforeBar(a, b);
+ *     R result;
+ *     try {
+ *         result = this.target.bar(a, b);
+ *     } catch (Throwable e) {
+ *         this.hooks.failedBar(e, a, b);
+ *         throw e;
+ *     }
+ *     this.hooks.afterBar(result, a, b);
+ *     return result;
+ * }
+ * </pre>
+ * 只需要覆盖关心的 Hooks 方法，其余的都是空的 default 方法，会被 JIT 内联掉。
+ * <p>
+ * 编译命令行（先编译处理器本身，见 pom.xml 中的两次 compile）：
+ * javac -processor reflection.proxy.processor.ProxyProcessor Foo.java
+ */
+@SupportedAnnotationTypes("reflection.proxy.GenerateProxy")
+@SupportedSourceVersion(SourceVersion.RELEASE_8)
+public class ProxyProcessor extends AbstractProcessor {
+
+    private Elements elementUtils;
+    private Types typeUtils;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elementUtils = processingEnv.getElementUtils();
+        typeUtils = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        for (Element e : env.getElementsAnnotatedWith(GenerateProxy.class)) {
+            if (e.getKind() != ElementKind.INTERFACE) {
+                error("@GenerateProxy 只能用于接口", e);
+            } else if (e.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+                error("@GenerateProxy 只支持顶层接口", e);
+            } else if (!((TypeElement) e).getTypeParameters().isEmpty()) {
+                error("@GenerateProxy 不支持泛型接口", e);
+            } else {
+                writeProxy((TypeElement) e);
+            }
+        }
+        return true;
+    }
+
+    private void writeProxy(TypeElement iface) {
+        String packageName = elementUtils.getPackageOf(iface).getQualifiedName().toString();
+        String proxyName = iface.getAnnotation(GenerateProxy.class).value();
+        if (proxyName.isEmpty()) {
+            proxyName = iface.getSimpleName() + "Proxy";
+        }
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement m : ElementFilter.methodsIn(elementUtils.getAllMembers(iface))) {
+            /* 跳过 Object 的方法以及静态、私有方法 */
+            if (m.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                    && !m.getModifiers().contains(Modifier.STATIC)
+                    && !m.getModifiers().contains(Modifier.PRIVATE)) {
+                methods.add(m);
+            }
+        }
+
+        StringBuilder hooks = new StringBuilder();
+        StringBuilder bodies = new StringBuilder();
+        Set<String> hookSignatures = new HashSet<>();
+        for (ExecutableElement m : methods) {
+            if (!writeMethod(iface, m, hooks, bodies, hookSignatures)) {
+                return;
+            }
+        }
+
+        String ifaceName = iface.getQualifiedName().toString();
+        String modifier = iface.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(packageName + "." + proxyName, iface)
+                .openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("/**\n * " + iface.getSimpleName() + " 的代理，由 " + getClass().getName() + " 生成，不要修改\n */\n");
+            writer.write(modifier + "final class " + proxyName + " implements " + ifaceName + " {\n\n");
+            writer.write("    public interface Hooks {\n" + hooks + "    }\n\n");
+            writer.write("    private static final Hooks NO_HOOKS = new Hooks() {\n    };\n\n");
+            writer.write("    private final " + ifaceName + " target;\n");
+            writer.write("    private final Hooks hooks;\n\n");
+            writer.write("    public " + proxyName + "(" + ifaceName + " target) {\n"
+                    + "        this(target, NO_HOOKS);\n    }\n\n");
+            writer.write("    public " + proxyName + "(" + ifaceName + " target, Hooks hooks) {\n"
+                    + "        this.target = java.util.Objects.requireNonNull(target);\n"
+                    + "        this.hooks = java.util.Objects.requireNonNull(hooks);\n    }\n");
+            writer.write(bodies.toString());
+            writer.write("}\n");
+        } catch (IOException e) {
+            error("无法生成 " + proxyName + ": " + e, iface);
+        }
+    }
+
+    private boolean writeMethod(TypeElement iface, ExecutableElement m, StringBuilder hooks, StringBuilder bodies,
+                                Set<String> hookSignatures) {
+        /* 父接口是泛型接口时，用 asMemberOf() 得到替换了类型参数之后的方法类型 */
+        ExecutableType type = (ExecutableType) typeUtils.asMemberOf((DeclaredType) iface.asType(), m);
+        String name = m.getSimpleName().toString();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        List<? extends VariableElement> params = m.getParameters();
+        List<String> paramNames = params.stream()
+                .map(p -> p.getSimpleName().toString())
+                .collect(Collectors.toList());
+
+        List<String> declarations = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            TypeMirror t = type.getParameterTypes().get(i);
+            String declared = m.isVarArgs() && i == params.size() - 1
+                    ? ((ArrayType) t).getComponentType() + "..."
+                    : t.toString();
+            declarations.add(declared + " " + paramNames.get(i));
+        }
+        String paramList = String.join(", ", declarations);
+        String argList = String.join(", ", paramNames);
+        boolean isVoid = type.getReturnType().getKind() == TypeKind.VOID;
+        String returnType = type.getReturnType().toString();
+        String result = fresh("result", paramNames);
+        String error = fresh("e", paramNames);
+        String typeParams = typeParameters(m);
+        String hookTypeParams = typeParams.isEmpty() ? "" : typeParams + " ";
+
+        List<String> afterParams = new ArrayList<>();
+        List<TypeMirror> afterTypes = new ArrayList<>();
+        if (!isVoid) {
+            afterParams.add(returnType + " " + result);
+            afterTypes.add(type.getReturnType());
+        }
+        afterParams.addAll(declarations);
+        afterTypes.addAll(type.getParameterTypes());
+        List<TypeMirror> failedTypes = new ArrayList<>();
+        failedTypes.add(elementUtils.getTypeElement("java.lang.Throwable").asType());
+        failedTypes.addAll(type.getParameterTypes());
+
+        if (!addHook(hookSignatures, "before" + suffix, type.getParameterTypes(), m)
+                || !addHook(hookSignatures, "after" + suffix, afterTypes, m)
+                || !addHook(hookSignatures, "failed" + suffix, failedTypes, m)) {
+            return false;
+        }
+        hooks.append("        default ").append(hookTypeParams).append("void before").append(suffix)
+                .append("(").append(paramList).append(") {\n        }\n");
+        hooks.append("        default ").append(hookTypeParams).append("void after").append(suffix)
+                .append("(").append(String.join(", ", afterParams)).append(") {\n        }\n");
+        hooks.append("        default ").append(hookTypeParams).append("void failed").append(suffix)
+                .append("(java.lang.Throwable ").append(error).append(paramList.isEmpty() ? "" : ", " + paramList)
+                .append(") {\n        }\n");
+
+        String thrown = type.getThrownTypes().isEmpty() ? "" : " throws " + type.getThrownTypes().stream()
+                .map(TypeMirror::toString)
+                .collect(Collectors.joining(", "));
+        String afterArgs = isVoid ? argList : argList.isEmpty() ? result : result + ", " + argList;
+        bodies.append("\n    @Override\n")
+                .append("    public ").append(hookTypeParams).append(returnType).append(" ").append(name)
+                .append("(").append(paramList).append(")").append(thrown).append(" {\n")
+                .append("        this.hooks.before").append(suffix).append("(").append(argList).append(");\n");
+        if (!isVoid) {
+            bodies.append("        ").append(returnType).append(" ").append(result).append(";\n");
+        }
+        bodies.append("        try {\n")
+                .append("            ").append(isVoid ? "" : result + " = ")
+                .append("this.target.").append(name).append("(").append(argList).append(");\n")
+                .append("        } catch (java.lang.Throwable ").append(error).append(") {\n")
+                .append("            this.hooks.failed").append(suffix).append("(").append(error)
+                .append(argList.isEmpty() ? "" : ", " + argList).append(");\n")
+                .append("            throw ").append(error).append(";\n")
+                .append("        }\n")
+                .append("        this.hooks.after").append(suffix).append("(").append(afterArgs).append(");\n");
+        if (!isVoid) {
+            bodies.append("        return ").append(result).append(";\n");
+        }
+        bodies.append("    }\n");
+        return true;
+    }
+
+    /**
+     * 重载的方法可能产生擦除后相同的 Hooks 方法，例如 void f(int) 的 afterF(int) 与 int f() 的 afterF(int)
+     */
+    private boolean addHook(Set<String> hookSignatures, String hook, List<? extends TypeMirror> types,
+                            ExecutableElement m) {
+        String erased = hook + types.stream()
+                .map(t -> typeUtils.erasure(t).toString())
+                .collect(Collectors.joining(",", "(", ")"));
+        if (!hookSignatures.add(erased)) {
+            error("重载的方法产生了重复的 Hooks 方法 " + erased, m);
+            return false;
+        }
+        return true;
+    }
+
+    private String typeParameters(ExecutableElement m) {
+        if (m.getTypeParameters().isEmpty()) {
+            return "";
+        }
+        List<String> result = new ArrayList<>();
+        for (TypeParameterElement p : m.getTypeParameters()) {
+            List<String> bounds = p.getBounds().stream()
+                    .map(TypeMirror::toString)
+                    .filter(b -> !b.equals("java.lang.Object"))
+                    .collect(Collectors.toList());
+            result.add(bounds.isEmpty() ? p.toString() : p + " extends " + String.join(" & ", bounds));
+        }
+        return "<" + String.join(", ", result) + ">";
+    }
+
+    /* 生成的局部变量不能与参数同名 */
+    private static String fresh(String name, List<String> taken) {
+        while (taken.contains(name)) {
+            name += "_";
+        }
+        return name;
+    }
+
+    private void error(String message, Element e) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+}
@@ -0,0 +1,80 @@
+package 加密服务;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+对比每条消息的平均耗时：示例中“每次操作都 getInstance()”的写法 vs. CryptoService 复用实例的写法
+
+用法：java 加密服务.CryptoBenchmark [消息数] [每条消息的字节数]
+
+Notice：第一轮包含 JIT 预热，只看后面几轮的结果更准确。
+ */
+public class CryptoBenchmark {
+    public static void main(String[] args) throws GeneralSecurityException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        byte[] aesKey = "1212121212121212".getBytes();
+        byte[] macKey = "0123456789abcdef0123456789abcdef".getBytes();
+        CryptoService service = new CryptoService(aesKey, "HmacMD5", macKey);
+        List<byte[]> messages = new ArrayList<>(count);
+        Random random = new Random(47);
+        for (int i = 0; i < count; i++) {
+            byte[] message = new byte[size];
+            random.nextBytes(message);
+            messages.add(message);
+        }
+
+        for (int round = 1; round <= 3; round++) {
+            System.out.println("---- 第 " + round + " 轮（" + count + " 条 " + size + " 字节的消息）----");
+            long start = System.nanoTime();
+            for (byte[] message : messages) {
+                MessageDigest.getInstance("MD5").digest(message);
+            }
+            report("MD5 每次 getInstance", start, count);
+            start = System.nanoTime();
+            CryptoService.digestAll("MD5", messages);
+            report("MD5 CryptoService.digestAll", start, count);
+
+            start = System.nanoTime();
+            for (byte[] message : messages) {
+                Mac mac = Mac.getInstance("HmacMD5");
+                mac.init(new SecretKeySpec(macKey, "HmacMD5"));
+                mac.doFinal(message);
+            }
+            report("HmacMD5 每次 getInstance", start, count);
+            start = System.nanoTime();
+            service.hmacAll(messages);
+            report("HmacMD5 CryptoService.hmacAll", start, count);
+
+            start = System.nanoTime();
+            for (byte[] message : messages) {
+                Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+                cipher.doFinal(message);
+            }
+            report("AES/ECB 每次 getInstance", start, count);
+            for (CryptoService.Mode mode : CryptoService.Mode.values()) {
+                start = System.nanoTime();
+                List<byte[]> encrypted = service.encryptAll(mode, messages);
+                report("AES/" + mode + " CryptoService.encryptAll", start, count);
+                if (!Arrays.equals(service.decrypt(mode, encrypted.get(0)), messages.get(0))) {
+                    throw new IllegalStateException(mode + " 解密结果与原文不一致");
+                }
+            }
+        }
+    }
+
+    private static void report(String name, long start, int count) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-34s %,10.0f ns/条%n", name, (double) elapsed / count);
+    }
+}
@@ -0,0 +1,295 @@
+package 加密服务;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 复用 Cipher/Mac/MessageDigest 实例的加密服务。
+ * <p>
+ * AESTest、HmacMD5Test、MD5Test 等示例每次操作都调用 getInstance()，需要查找 Provider 并创建新对象，开销很大。
+ * 这里每个线程只创建一次实例（ThreadLocal），之后只需要 init()（换 IV）或直接复用：
+ * 1. MessageDigest：digest() 之后自动恢复到初始状态，可以直接复用；
+ * 2. Mac：用密钥 init 一次后，doFinal() 之后自动恢复到初始状态，可以直接复用；
+ * 3. Cipher：每条消息都要用新的 IV 重新 init，但不需要重新 getInstance。
+ * <p>
+ * 支持的工作模式：ECB（与 AESTest 相同，仅用于兼容）、CTR、GCM（推荐，同时提供完整性校验）。
+ * 加密结果的格式：IV + 密文（GCM 模式的密文末尾还有 16 字节的认证标签），ECB 模式没有 IV。
+ * <p>
+ * Notice:
+ * 1. ByteBuffer 版本的方法直接读写调用方的缓冲区，不产生中间的 byte[]；
+ *    输入和输出可以是同一个数组中重叠的区域（原地加密|解密），这时会先复制一份输入；direct 缓冲区的输入和输出不能重叠；
+ * 2. CryptoService 是线程安全的，可以被多个线程共享。
+ */
+public class CryptoService {
+
+    public enum Mode {
+        ECB("AES/ECB/PKCS5Padding", 0),
+        CTR("AES/CTR/NoPadding", 16),
+        GCM("AES/GCM/NoPadding", 12);
+
+        private final String transformation;
+        private final int ivLength;
+
+        Mode(String transformation, int ivLength) {
+            this.transformation = transformation;
+            this.ivLength = ivLength;
+        }
+    }
+
+    /** GCM 认证标签的长度（bit） */
+    private static final int GCM_TAG_BITS = 128;
+
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
+    private final SecretKeySpec aesKey;
+    private final SecretKeySpec macKey;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Map<Mode, Cipher>> ciphers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param aesKey       AES 密钥（16/24/32 字节）
+     * @param macAlgorithm Hmac 算法名称，如：HmacMD5、HmacSHA256
+     * @param macKey       Hmac 密钥
+     */
+    public CryptoService(byte[] aesKey, String macAlgorithm, byte[] macKey) throws GeneralSecurityException {
+        this.aesKey = new SecretKeySpec(aesKey, "AES");
+        this.macKey = new SecretKeySpec(macKey, macAlgorithm);
+        /* 提前检查算法和密钥是否可用，避免在 ThreadLocal 初始化时才失败 */
+        Cipher.getInstance(Mode.GCM.transformation).init(Cipher.ENCRYPT_MODE, this.aesKey,
+                new GCMParameterSpec(GCM_TAG_BITS, new byte[Mode.GCM.ivLength]));
+        Mac.getInstance(macAlgorithm).init(this.macKey);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(macAlgorithm);
+                mac.init(this.macKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /* ---------------- 摘要 ---------------- */
+
+    /**
+     * 计算摘要，如：digest("MD5", data)、digest("SHA-1", data)
+     */
+    public static byte[] digest(String algorithm, byte[] input) throws NoSuchAlgorithmException {
+        return messageDigest(algorithm).digest(input);
+    }
+
+    /**
+     * 批量计算摘要：整批只查找一次 MessageDigest 实例
+     */
+    public static List<byte[]> digestAll(String algorithm, List<byte[]> inputs) throws NoSuchAlgorithmException {
+        MessageDigest md = messageDigest(algorithm);
+        List<byte[]> results = new ArrayList<>(inputs.size());
+        for (byte[] input : inputs) {
+            results.add(md.digest(input));
+        }
+        return results;
+    }
+
+    private static MessageDigest messageDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest md = digests.get(algorithm);
+        if (md == null) {
+            md = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, md);
+        }
+        return md;
+    }
+
+    /* ---------------- Hmac ---------------- */
+
+    public byte[] hmac(byte[] input) {
+        return macs.get().doFinal(input);
+    }
+
+    /**
+     * 计算 input 中 [position, limit) 的 Hmac，结果写入 output 的当前位置
+     */
+    public void hmac(ByteBuffer input, ByteBuffer output) throws ShortBufferException {
+        Mac mac = macs.get();
+        mac.update(input);
+        int length = mac.getMacLength();
+        if (output.remaining() < length) {
+            mac.reset();
+            throw new ShortBufferException("Need " + length + " bytes, but only " + output.remaining() + " remaining");
+        }
+        if (output.hasArray()) {
+            mac.doFinal(output.array(), output.arrayOffset() + output.position());
+            output.position(output.position() + length);
+        } else {
+            output.put(mac.doFinal());
+        }
+    }
+
+    public List<byte[]> hmacAll(List<byte[]> inputs) {
+        Mac mac = macs.get();
+        List<byte[]> results = new ArrayList<>(inputs.size());
+        for (byte[] input : inputs) {
+            results.add(mac.doFinal(input));
+        }
+        return results;
+    }
+
+    /* ---------------- AES ---------------- */
+
+    /**
+     * 加密后的长度（包括 IV 和 GCM 认证标签）
+     */
+    public int encryptedLength(Mode mode, int plaintextLength) {
+        switch (mode) {
+            case ECB:
+                return (plaintextLength / 16 + 1) * 16;
+            case GCM:
+                return mode.ivLength + plaintextLength + GCM_TAG_BITS / 8;
+            default:
+                return mode.ivLength + plaintextLength;
+        }
+    }
+
+    public byte[] encrypt(Mode mode, byte[] input) throws GeneralSecurityException {
+        return encrypt(cipher(mode), mode, input);
+    }
+
+    public byte[] decrypt(Mode mode, byte[] input) throws GeneralSecurityException {
+        return decrypt(cipher(mode), mode, input);
+    }
+
+    /**
+     * 加密 input 中 [position, limit) 的数据，把 IV + 密文写入 output 的当前位置
+     *
+     * @return 写入 output 的字节数
+     */
+    public int encrypt(Mode mode, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return encrypt(cipher(mode), mode, input, output);
+    }
+
+    /**
+     * 解密 input 中 [position, limit) 的 IV + 密文，把原文写入 output 的当前位置
+     *
+     * @return 写入 output 的字节数
+     */
+    public int decrypt(Mode mode, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return decrypt(cipher(mode), mode, input, output);
+    }
+
+    /**
+     * 批量加密：整批只查找一次 Cipher 实例
+     */
+    public List<byte[]> encryptAll(Mode mode, List<byte[]> inputs) throws GeneralSecurityException {
+        Cipher cipher = cipher(mode);
+        List<byte[]> results = new ArrayList<>(inputs.size());
+        for (byte[] input : inputs) {
+            results.add(encrypt(cipher, mode, input));
+        }
+        return results;
+    }
+
+    public List<byte[]> decryptAll(Mode mode, List<byte[]> inputs) throws GeneralSecurityException {
+        Cipher cipher = cipher(mode);
+        List<byte[]> results = new ArrayList<>(inputs.size());
+        for (byte[] input : inputs) {
+            results.add(decrypt(cipher, mode, input));
+        }
+        return results;
+    }
+
+    private byte[] encrypt(Cipher cipher, Mode mode, byte[] input) throws GeneralSecurityException {
+        ByteBuffer output = ByteBuffer.allocate(encryptedLength(mode, input.length));
+        encrypt(cipher, mode, ByteBuffer.wrap(input), output);
+        return output.array();
+    }
+
+    private byte[] decrypt(Cipher cipher, Mode mode, byte[] input) throws GeneralSecurityException {
+        ByteBuffer output = ByteBuffer.allocate(input.length);
+        int length = decrypt(cipher, mode, ByteBuffer.wrap(input), output);
+        return length == input.length ? output.array() : Arrays.copyOf(output.array(), length);
+    }
+
+    private int encrypt(Cipher cipher, Mode mode, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if (mode.ivLength == 0) {
+            cipher.init(Cipher.ENCRYPT_MODE, aesKey);
+            return cipher.doFinal(input, output);
+        }
+        byte[] iv = new byte[mode.ivLength];
+        random.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, parameters(mode, iv));
+        /* 输出比输入多了前面的 IV，原地加密时密文会覆盖还没有读取的原文，所以要先复制输入，IV 最后再写入 */
+        input = separate(input, output);
+        int start = output.position();
+        output.position(start + iv.length);
+        int length;
+        try {
+            length = cipher.doFinal(input, output);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            output.position(start);
+            throw e;
+        }
+        int end = output.position();
+        output.position(start);
+        output.put(iv);
+        output.position(end);
+        return iv.length + length;
+    }
+
+    private int decrypt(Cipher cipher, Mode mode, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if (mode.ivLength == 0) {
+            cipher.init(Cipher.DECRYPT_MODE, aesKey);
+        } else {
+            byte[] iv = new byte[mode.ivLength];
+            input.get(iv);
+            cipher.init(Cipher.DECRYPT_MODE, aesKey, parameters(mode, iv));
+        }
+        return cipher.doFinal(separate(input, output), output);
+    }
+
+    /**
+     * input 与 output 是同一个数组中重叠的区域时，返回 input 剩余内容的副本，否则返回 input 本身
+     */
+    private static ByteBuffer separate(ByteBuffer input, ByteBuffer output) {
+        if (!input.hasArray() || !output.hasArray() || input.array() != output.array()) {
+            return input;
+        }
+        int inStart = input.arrayOffset() + input.position();
+        int outStart = output.arrayOffset() + output.position();
+        if (inStart >= outStart + output.remaining() || outStart >= inStart + input.remaining()) {
+            return input;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(input.remaining());
+        copy.put(input).flip();
+        return copy;
+    }
+
+    private Cipher cipher(Mode mode) throws GeneralSecurityException {
+        Map<Mode, Cipher> map = ciphers.get();
+        Cipher cipher = map.get(mode);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(mode.transformation);
+            map.put(mode, cipher);
+        }
+        return cipher;
+    }
+
+    private static AlgorithmParameterSpec parameters(Mode mode, byte[] iv) {
+        return mode == Mode.GCM ? new GCMParameterSpec(GCM_TAG_BITS, iv) : new IvParameterSpec(iv);
+    }
+}
@@ -0,0 +1,52 @@
+package 加密服务;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * CryptoService 的原地加密|解密：输入和输出是同一个数组，每种工作模式都要能还原原文。
+ * Notice:
+ * 1. 分别测试输入、输出从数组开头开始，以及从数组中间（position > 0）开始两种情况；
+ * 2. 原文的长度不是 16 的整数倍，ECB 模式会填充。
+ */
+public class CryptoServiceTest {
+    public static void main(String[] args) throws GeneralSecurityException {
+        byte[] aesKey = "1212121212121212".getBytes(StandardCharsets.UTF_8);
+        byte[] macKey = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+        CryptoService service = new CryptoService(aesKey, "HmacMD5", macKey);
+        byte[] message = "你好，生活！Hello, in-place encryption.".getBytes(StandardCharsets.UTF_8);
+
+        for (CryptoService.Mode mode : CryptoService.Mode.values()) {
+            for (int offset : new int[]{0, 5}) {
+                byte[] array = new byte[offset + service.encryptedLength(mode, message.length)];
+                System.arraycopy(message, 0, array, offset, message.length);
+
+                // 原地加密
+                ByteBuffer buffer = ByteBuffer.wrap(array);
+                buffer.position(offset).limit(offset + message.length);
+                ByteBuffer output = ByteBuffer.wrap(array);
+                output.position(offset);
+                int encrypted = service.encrypt(mode, buffer, output);
+                check(encrypted == service.encryptedLength(mode, message.length), mode + " 加密后的长度");
+
+                // 原地解密
+                buffer = ByteBuffer.wrap(array);
+                buffer.position(offset).limit(offset + encrypted);
+                output = ByteBuffer.wrap(array);
+                output.position(offset);
+                int decrypted = service.decrypt(mode, buffer, output);
+                byte[] result = Arrays.copyOfRange(array, offset, offset + decrypted);
+                check(Arrays.equals(result, message), mode + " 原地解密结果与原文不一致");
+                System.out.println(mode + " offset " + offset + ": " + new String(result, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -60,3 +60,16 @@ class Test {
         new Consumer(bq).start();
     }
 }
+
+/*
+Producer/Consumer 只依赖 BlockingQueue 接口，所以可以直接换成无锁的 RingBufferBlockingQueue（性能对比见 QueueBenchmark.java）
+ */
+class Test2 {
+    public static void main(String[] args) {
+        BlockingQueue<String> bq = new RingBufferBlockingQueue<>(1, RingBufferBlockingQueue.WaitStrategy.PARK);
+        new Producer(bq).start();
+        new Producer(bq).start();
+        new Producer(bq).start();
+        new Consumer(bq).start();
+    }
+}
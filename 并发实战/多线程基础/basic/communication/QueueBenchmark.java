@@ -0,0 +1,92 @@
+package basic.communication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+对比 ArrayBlockingQueue、LinkedBlockingQueue 和 RingBufferBlockingQueue 的吞吐量与延迟。
+
+用法：java basic.communication.QueueBenchmark [生产者数] [消费者数] [每个生产者的消息数] [队列容量]
+
+每条消息是生产者放入队列时的 System.nanoTime()，消费者取出后计算延迟（从 put 到 take 的时间）。
+Notice：第一轮包含 JIT 预热，只看后面几轮的结果更准确。
+ */
+public class QueueBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int consumers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+        for (int round = 1; round <= 3; round++) {
+            System.out.println("---- 第 " + round + " 轮（" + producers + " 生产者 / " + consumers + " 消费者）----");
+            run("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(capacity), producers, consumers, messages);
+            run("LinkedBlockingQueue", () -> new LinkedBlockingQueue<>(capacity), producers, consumers, messages);
+            for (RingBufferBlockingQueue.WaitStrategy strategy : RingBufferBlockingQueue.WaitStrategy.values()) {
+                run("RingBuffer(" + strategy + ")", () -> new RingBufferBlockingQueue<>(capacity, strategy),
+                        producers, consumers, messages);
+            }
+        }
+    }
+
+    private static void run(String name, Supplier<BlockingQueue<Long>> factory,
+                            int producers, int consumers, int messages) throws InterruptedException {
+        BlockingQueue<Long> queue = factory.get();
+        long total = (long) producers * messages;
+        AtomicLong remaining = new AtomicLong(total);
+        AtomicLong latencySum = new AtomicLong();
+        AtomicLong latencyMax = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < producers; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int n = 0; n < messages; n++) {
+                        queue.put(System.nanoTime());
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        for (int i = 0; i < consumers; i++) {
+            threads.add(new Thread(() -> {
+                long sum = 0;
+                long max = 0;
+                try {
+                    start.await();
+                    /* 先领取一个名额再 take，保证所有消息被取完后消费者能退出 */
+                    while (remaining.getAndDecrement() > 0) {
+                        long latency = System.nanoTime() - queue.take();
+                        sum += latency;
+                        max = Math.max(max, latency);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                latencySum.addAndGet(sum);
+                latencyMax.accumulateAndGet(max, Math::max);
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%-22s %,14.0f ops/s  平均延迟 %,10.0f ns  最大延迟 %,14d ns%n",
+                name, total * 1e9 / elapsed, (double) latencySum.get() / total, latencyMax.get());
+    }
+}
@@ -0,0 +1,309 @@
+package basic.communication;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+无锁的有界多生产者/多消费者（MPMC）队列：基于环形数组，每个槽位带一个序号（sequence）。
+- 生产者通过 CAS 推进 tail 抢占槽位，写入元素后再发布槽位的序号；
+- 消费者通过 CAS 推进 head 抢占槽位，取出元素后把槽位的序号推进一圈，留给下一轮的生产者。
+与 ArrayBlockingQueue 相比，生产者和消费者不再竞争同一把 ReentrantLock，也不需要像 practise/Test3 的 TestQueue 那样在 synchronized 里空转。
+
+队列满或队列空时，put()/take() 按 WaitStrategy 等待：
+- SPIN：一直自旋，延迟最低，但会占满一个 CPU 核心，只适合线程数不超过 CPU 核心数的场景；
+- YIELD：每次失败都调用 Thread.yield() 让出 CPU；
+- PARK：先自旋一小会，然后 LockSupport.parkNanos() 睡眠，睡眠时间逐步加长（最多 1 毫秒），CPU 占用最低。
+因为没有锁和 Condition，PARK 策略依靠定时唤醒而不是 signal，所以唤醒会有最多 1 毫秒的延迟。
+
+Notice：容量会向上取整为 2 的幂；iterator() 和 toString() 只是弱一致的快照。
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    public enum WaitStrategy {
+        SPIN {
+            @Override
+            void idle(int attempt) {
+                /* 什么也不做，继续自旋 */
+            }
+        },
+        YIELD {
+            @Override
+            void idle(int attempt) {
+                Thread.yield();
+            }
+        },
+        PARK {
+            @Override
+            void idle(int attempt) {
+                if (attempt < SPIN_TRIES) {
+                    return;
+                }
+                int shift = Math.min(attempt - SPIN_TRIES, 10);
+                LockSupport.parkNanos(MIN_PARK_NANOS << shift);
+            }
+        };
+
+        private static final int SPIN_TRIES = 100;
+        private static final long MIN_PARK_NANOS = 1_000L;
+
+        abstract void idle(int attempt);
+    }
+
+    /*
+    在 AtomicLong 后面填充 7 个 long，让 head 和 tail 各自独占一个缓存行（64 字节），避免伪共享
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        PaddedAtomicLong(long initialValue) {
+            super(initialValue);
+        }
+    }
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+    private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+    private final WaitStrategy waitStrategy;
+
+    public RingBufferBlockingQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                /* 槽位空闲，尝试抢占 */
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    /* 发布：序号的 volatile 写保证消费者能看到上面写入的元素 */
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                /* 槽位还没有被上一轮的消费者取走：队列已满 */
+                return false;
+            } else {
+                /* 被其他生产者抢先了 */
+                pos = tail.get();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    /* 把槽位留给下一轮（pos + 容量）的生产者 */
+                    sequences.set(index, pos + mask + 1);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                /* 槽位还没有被生产者写入：队列为空 */
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            E e = (E) buffer[index];
+            /* 读取期间槽位没有被消费，说明读到的元素有效 */
+            if (head.get() == pos && e != null) {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(e)) {
+            checkInterrupted();
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(e)) {
+            checkInterrupted();
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            checkInterrupted();
+            waitStrategy.idle(attempt++);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            checkInterrupted();
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 批量取出：一次 CAS 抢占连续的多个已发布的槽位，而不是每个元素都 CAS 一次
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int total = 0;
+        while (total < maxElements) {
+            long pos = head.get();
+            int limit = (int) Math.min(maxElements - total, (long) mask + 1);
+            int ready = 0;
+            while (ready < limit && sequences.get((int) ((pos + ready) & mask)) == pos + ready + 1) {
+                ready++;
+            }
+            if (ready == 0) {
+                return total;
+            }
+            if (!head.compareAndSet(pos, pos + ready)) {
+                continue;
+            }
+            for (int i = 0; i < ready; i++) {
+                int index = (int) ((pos + i) & mask);
+                c.add((E) buffer[index]);
+                buffer[index] = null;
+                sequences.set(index, pos + i + mask + 1);
+            }
+            total += ready;
+        }
+        return total;
+    }
+
+    @Override
+    public int size() {
+        /* 先读 head 再读 tail，保证结果不会是负数 */
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, Math.min(t - h, (long) mask + 1));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return mask + 1 - size();
+    }
+
+    /**
+     * 弱一致的快照迭代器，不支持 remove()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long h = head.get();
+        long t = tail.get();
+        for (long pos = h; pos < t; pos++) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) == pos + 1) {
+                Object e = buffer[index];
+                if (e != null) {
+                    snapshot.add((E) e);
+                }
+            }
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
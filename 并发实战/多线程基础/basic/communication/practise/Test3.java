@@ -69,4 +69,5 @@ public class Test3 {
 
 优化：
 在 queue 为空时，让该线程进入等待状态；往 queue 添加元素后，唤醒所有线程。
+或者直接使用 basic.communication.RingBufferBlockingQueue：take() 在队列为空时按 WaitStrategy 让出 CPU 或睡眠，而不是在 synchronized 里空转。
  */
@@ -1,5 +1,7 @@
 package basic.synchronize;
 
+import java.util.concurrent.TimeUnit;
+
 class A {
     public synchronized void f(B b) { /* 获得 A 的对象锁 */
         System.out.println(Thread.currentThread().getName() + " 进入了 A 对象的 f()");
@@ -51,6 +53,15 @@ public class DeadLock extends Thread {
     }
 }
 /*
+使用 LockMonitor 在后台检测死锁：死锁发生后的下一次采样（1 秒内）会输出等待环以及两个线程的调用栈
+ */
+class DeadLockDetect {
+    public static void main(String[] args) {
+        LockMonitor.start(1, TimeUnit.SECONDS);
+        DeadLock.main(args);
+    }
+}
+/*
 Output:（情况之一）
 线程甲 进入了 B 对象的 f()
 线程乙 进入了 A 对象的 f()
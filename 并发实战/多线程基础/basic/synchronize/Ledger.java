@@ -0,0 +1,204 @@
+package basic.synchronize;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+无竞争的账户账本：用于替代 Account、Account3、Account4 这种“每次取款都锁住整个账户”的写法。
+
+1. 金额使用 long 表示的最小货币单位（如：分），避免 Double 的精度问题，也避免每次修改余额都装箱产生新对象。
+2. 每个账户的余额 = 累计存入（credits） - 累计取出（debits）：
+   - 存款只是 LongAdder.add()，多个线程同时存款时分散到不同的 Cell 上，互不竞争；
+   - 取款是对 debits 的 CAS 循环：只有在 credits.sum() - debits >= 取款金额时才会成功，所以余额永远不会为负。
+     因为 credits 只增不减，读到的 sum() 不会大于真实的存款总额，所以这个判断是安全的。
+3. 转账（包括批量转账）需要保证“要么全部成功，要么全部不生效”，所以按账户所在的分段（stripe）加锁：
+   所有线程都按分段下标从小到大的顺序加锁，不会出现 DeadLock.java 中 A 等 B、B 等 A 的循环等待。
+   单独的存款、取款不需要加锁。
+ */
+public class Ledger {
+
+    /**
+     * 一笔转账
+     */
+    public static final class Transfer {
+        private final int from;
+        private final int to;
+        private final long amount;
+
+        public Transfer(int from, int to, long amount) {
+            if (amount <= 0) {
+                throw new IllegalArgumentException("amount must be positive: " + amount);
+            }
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+    }
+
+    private static final class AccountCell {
+        private final LongAdder credits = new LongAdder();
+        private final AtomicLong debits = new AtomicLong();
+    }
+
+    private final AccountCell[] accounts;
+    private final ReentrantLock[] stripes;
+
+    public Ledger(int accountCount) {
+        this(accountCount, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public Ledger(int accountCount, int stripeCount) {
+        if (accountCount <= 0 || stripeCount <= 0) {
+            throw new IllegalArgumentException("accountCount: " + accountCount + ", stripeCount: " + stripeCount);
+        }
+        accounts = new AccountCell[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new AccountCell();
+        }
+        stripes = new ReentrantLock[Math.min(stripeCount, accountCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public int accountCount() {
+        return accounts.length;
+    }
+
+    public void deposit(int account, long amount) {
+        checkAmount(amount);
+        accounts[account].credits.add(amount);
+    }
+
+    /**
+     * 取款
+     *
+     * @return 余额不足时返回 false，余额不变
+     */
+    public boolean withdraw(int account, long amount) {
+        checkAmount(amount);
+        AccountCell cell = accounts[account];
+        while (true) {
+            long debits = cell.debits.get();
+            if (cell.credits.sum() - debits < amount) {
+                return false;
+            }
+            if (cell.debits.compareAndSet(debits, debits + amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 账户余额：并发修改时返回的是某个时刻附近的近似值
+     */
+    public long balance(int account) {
+        AccountCell cell = accounts[account];
+        /* 先读 debits 再读 credits，并发存取款时结果偏大而不会出现负数 */
+        long debits = cell.debits.get();
+        return cell.credits.sum() - debits;
+    }
+
+    public boolean transfer(int from, int to, long amount) {
+        return transferAll(Collections.singletonList(new Transfer(from, to, amount)));
+    }
+
+    /**
+     * 批量转账：要么全部成功，要么全部不生效
+     * <p>
+     * 所有转出都先于转入执行，所以同一批中转入的钱不能再在这一批中转出，每个转出账户需要在批量转账开始前就有足够的余额。
+     *
+     * @return 有任意一笔转账余额不足时返回 false，所有账户的余额不变
+     */
+    public boolean transferAll(List<Transfer> transfers) {
+        int[] lockOrder = lockOrder(transfers);
+        for (int stripe : lockOrder) {
+            stripes[stripe].lock();
+        }
+        try {
+            /* 先扣除所有转出账户，全部成功后再转入；这样回滚时只需要把钱退回转出账户，不会让任何账户变成负数 */
+            int withdrawn = 0;
+            for (Transfer transfer : transfers) {
+                if (!withdraw(transfer.from, transfer.amount)) {
+                    break;
+                }
+                withdrawn++;
+            }
+            if (withdrawn < transfers.size()) {
+                for (int i = 0; i < withdrawn; i++) {
+                    Transfer transfer = transfers.get(i);
+                    accounts[transfer.from].credits.add(transfer.amount);
+                }
+                return false;
+            }
+            for (Transfer transfer : transfers) {
+                accounts[transfer.to].credits.add(transfer.amount);
+            }
+            return true;
+        } finally {
+            for (int i = lockOrder.length - 1; i >= 0; i--) {
+                stripes[lockOrder[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * 所有账户的余额之和
+     */
+    public long totalBalance() {
+        long total = 0;
+        for (int i = 0; i < accounts.length; i++) {
+            total += balance(i);
+        }
+        return total;
+    }
+
+    /**
+     * 转账涉及的所有分段，去重后从小到大排序：所有线程都按这个顺序加锁
+     */
+    private int[] lockOrder(List<Transfer> transfers) {
+        int[] order = new int[transfers.size() * 2];
+        int n = 0;
+        for (Transfer transfer : transfers) {
+            order[n++] = stripeOf(transfer.from);
+            order[n++] = stripeOf(transfer.to);
+        }
+        Arrays.sort(order);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || order[distinct - 1] != order[i]) {
+                order[distinct++] = order[i];
+            }
+        }
+        return Arrays.copyOf(order, distinct);
+    }
+
+    private int stripeOf(int account) {
+        if (account < 0 || account >= accounts.length) {
+            throw new IndexOutOfBoundsException("account: " + account);
+        }
+        return account % stripes.length;
+    }
+
+    private static void checkAmount(long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive: " + amount);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package basic.synchronize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+多线程对比：Account4 风格的“每个账户一把 ReentrantLock + Double 余额” vs. Ledger
+
+用法：java basic.synchronize.LedgerBenchmark [线程数] [账户数] [每个线程的操作数]
+
+每个线程随机执行 50% 存款、30% 取款、20% 转账；账户数越少，竞争越激烈。
+运行结束后校验：所有账户余额之和 = 初始金额 + 存款总额 - 成功取款总额（转账不改变总额）。
+ */
+public class LedgerBenchmark {
+
+    /*
+    对照组：与 Account4 相同的加锁方式，转账时按账户下标的顺序加锁避免死锁
+     */
+    static class LockedAccounts {
+        private final ReentrantLock[] locks;
+        private final Double[] balances;
+
+        LockedAccounts(int count, double initial) {
+            locks = new ReentrantLock[count];
+            balances = new Double[count];
+            for (int i = 0; i < count; i++) {
+                locks[i] = new ReentrantLock();
+                balances[i] = initial;
+            }
+        }
+
+        void deposit(int account, double amount) {
+            locks[account].lock();
+            try {
+                balances[account] += amount;
+            } finally {
+                locks[account].unlock();
+            }
+        }
+
+        boolean draw(int account, double amount) {
+            locks[account].lock();
+            try {
+                if (amount <= balances[account]) {
+                    balances[account] -= amount;
+                    return true;
+                }
+                return false;
+            } finally {
+                locks[account].unlock();
+            }
+        }
+
+        boolean transfer(int from, int to, double amount) {
+            if (from == to) {
+                return draw(from, amount) && depositTrue(to, amount);
+            }
+            ReentrantLock first = locks[Math.min(from, to)];
+            ReentrantLock second = locks[Math.max(from, to)];
+            first.lock();
+            second.lock();
+            try {
+                if (amount <= balances[from]) {
+                    balances[from] -= amount;
+                    balances[to] += amount;
+                    return true;
+                }
+                return false;
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+        }
+
+        private boolean depositTrue(int account, double amount) {
+            deposit(account, amount);
+            return true;
+        }
+
+        double total() {
+            double total = 0;
+            for (Double balance : balances) {
+                total += balance;
+            }
+            return total;
+        }
+    }
+
+    private interface Operations {
+        void deposit(int account, long amount);
+
+        boolean withdraw(int account, long amount);
+
+        boolean transfer(int from, int to, long amount);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        long initial = 100_000;
+
+        for (int round = 1; round <= 3; round++) {
+            System.out.println("---- 第 " + round + " 轮（" + threads + " 线程 / " + accountCount + " 账户）----");
+
+            LockedAccounts locked = new LockedAccounts(accountCount, initial);
+            run("ReentrantLock + Double", threads, operations, accountCount, initial * accountCount, new Operations() {
+                public void deposit(int account, long amount) {
+                    locked.deposit(account, amount);
+                }
+
+                public boolean withdraw(int account, long amount) {
+                    return locked.draw(account, amount);
+                }
+
+                public boolean transfer(int from, int to, long amount) {
+                    return locked.transfer(from, to, amount);
+                }
+            }, () -> (long) locked.total());
+
+            Ledger ledger = new Ledger(accountCount);
+            for (int i = 0; i < accountCount; i++) {
+                ledger.deposit(i, initial);
+            }
+            run("Ledger", threads, operations, accountCount, initial * accountCount, new Operations() {
+                public void deposit(int account, long amount) {
+                    ledger.deposit(account, amount);
+                }
+
+                public boolean withdraw(int account, long amount) {
+                    return ledger.withdraw(account, amount);
+                }
+
+                public boolean transfer(int from, int to, long amount) {
+                    return ledger.transfer(from, to, amount);
+                }
+            }, ledger::totalBalance);
+        }
+    }
+
+    private interface Total {
+        long get();
+    }
+
+    private static void run(String name, int threads, int operations, int accountCount, long initialTotal,
+                            Operations ops, Total total) throws InterruptedException {
+        LongAdder deposited = new LongAdder();
+        LongAdder withdrawn = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                for (int i = 0; i < operations; i++) {
+                    int account = random.nextInt(accountCount);
+                    long amount = 1 + random.nextInt(1000);
+                    int op = random.nextInt(10);
+                    if (op < 5) {
+                        ops.deposit(account, amount);
+                        deposited.add(amount);
+                    } else if (op < 8) {
+                        if (ops.withdraw(account, amount)) {
+                            withdrawn.add(amount);
+                        }
+                    } else {
+                        ops.transfer(account, random.nextInt(accountCount), amount);
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        long expected = initialTotal + deposited.sum() - withdrawn.sum();
+        long actual = total.get();
+        System.out.printf("%-24s %,14.0f ops/s  总额校验：%s%n", name, (double) threads * operations * 1e9 / elapsed,
+                expected == actual ? "通过" : "失败（期望 " + expected + "，实际 " + actual + "）");
+    }
+}
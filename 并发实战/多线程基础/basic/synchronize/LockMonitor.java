@@ -0,0 +1,275 @@
+package basic.synchronize;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+进程内的死锁和锁竞争监控：
+Java 虚拟机不会处理死锁（见 Description.md），DeadLock.java 中的程序一旦死锁，既不会抛出异常也不会有任何提示。
+LockMonitor 在后台线程中定期通过 ThreadMXBean 采样：
+1. findDeadlockedThreads()：发现死锁时，输出“线程 -> 等待的锁 -> 锁的持有者”组成的环，以及环上每个线程的调用栈，同一个环只报告一次；
+2. 统计每把锁的竞争情况：采样时处于 BLOCKED / WAITING 状态的线程数，以及这些线程在两次采样之间增加的阻塞、等待时间。
+
+两种模式：
+- 低开销模式（detailed = false）：只采样线程状态和正在等待的锁，不获取调用栈，不开启线程竞争监控，可以在生产环境常驻；
+- 详细模式（detailed = true）：开启 ThreadMXBean 的线程竞争监控，额外统计每把锁上的阻塞、等待时间（毫秒），
+  close() 时恢复线程竞争监控原来的开关（它是整个 JVM 的设置）。
+无论哪种模式，只有在发现死锁时才会获取调用栈和持有的锁。
+
+锁名（ThreadInfo.getLockName()）中包含锁对象的 identity hash，进程中出现过的锁会越来越多，
+所以连续 EVICT_AFTER_SAMPLES 次采样都没有线程等待的锁会从统计中移除，已经报告过的死锁环在环上的线程结束后也会移除，
+常驻的监控占用的内存只与最近被竞争的锁和存活的线程有关。
+ */
+public class LockMonitor implements AutoCloseable {
+
+    /** 一把锁连续这么多次采样都没有线程等待时，从统计中移除 */
+    public static final int EVICT_AFTER_SAMPLES = 100;
+
+    /**
+     * 一把锁的竞争统计
+     */
+    public static final class LockStats {
+        private final String lockName;
+        private final AtomicLong blockedSamples = new AtomicLong();
+        private final AtomicLong waitingSamples = new AtomicLong();
+        private final AtomicLong blockedMillis = new AtomicLong();
+        private final AtomicLong waitedMillis = new AtomicLong();
+        /* 最近一次有线程等待该锁的采样序号，只在采样线程中访问 */
+        private long lastSeenSample;
+
+        private LockStats(String lockName) {
+            this.lockName = lockName;
+        }
+
+        public String getLockName() {
+            return lockName;
+        }
+
+        /** 采样时阻塞在该锁上（等待进入 synchronized）的线程次数 */
+        public long getBlockedSamples() {
+            return blockedSamples.get();
+        }
+
+        /** 采样时在该锁上 wait/park 的线程次数 */
+        public long getWaitingSamples() {
+            return waitingSamples.get();
+        }
+
+        /** 详细模式下，线程阻塞在该锁上的累计时间 */
+        public long getBlockedMillis() {
+            return blockedMillis.get();
+        }
+
+        /** 详细模式下，线程在该锁上等待的累计时间 */
+        public long getWaitedMillis() {
+            return waitedMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return lockName + " {blockedSamples=" + getBlockedSamples() + ", waitingSamples=" + getWaitingSamples()
+                    + ", blockedMillis=" + getBlockedMillis() + ", waitedMillis=" + getWaitedMillis() + "}";
+        }
+    }
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean detailed;
+    private final Consumer<String> deadlockReporter;
+    private final ScheduledExecutorService scheduler;
+    /* 是否由本监控开启了线程竞争监控，close() 时需要关闭 */
+    private final boolean contentionMonitoringEnabledHere;
+    private final Map<String, LockStats> lockStats = new ConcurrentHashMap<>();
+    private final AtomicLong deadlockCount = new AtomicLong();
+    /* 只在采样线程中访问 */
+    private final Map<Long, long[]> lastThreadTimes = new HashMap<>();
+    private final Set<Set<Long>> reportedCycles = new HashSet<>();
+    private long samples;
+
+    /**
+     * 以低开销模式启动，发现死锁时输出到 System.err
+     */
+    public static LockMonitor start(long period, TimeUnit unit) {
+        return new LockMonitor(period, unit, false, System.err::println);
+    }
+
+    public LockMonitor(long period, TimeUnit unit, boolean detailed, Consumer<String> deadlockReporter) {
+        this.detailed = detailed;
+        this.deadlockReporter = deadlockReporter;
+        if (detailed && threadMXBean.isThreadContentionMonitoringSupported()
+                && !threadMXBean.isThreadContentionMonitoringEnabled()) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+            this.contentionMonitoringEnabledHere = true;
+        } else {
+            this.contentionMonitoringEnabledHere = false;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::sampleSafely, period, period, unit);
+    }
+
+    /**
+     * 竞争最激烈的 n 把锁（按采样到的阻塞、等待次数排序），只包括最近 EVICT_AFTER_SAMPLES 次采样中被等待过的锁
+     */
+    public List<LockStats> hotspots(int n) {
+        List<LockStats> stats = new ArrayList<>(lockStats.values());
+        stats.sort((a, b) -> Long.compare(b.getBlockedSamples() + b.getWaitingSamples(),
+                a.getBlockedSamples() + a.getWaitingSamples()));
+        return stats.subList(0, Math.min(n, stats.size()));
+    }
+
+    public Map<String, LockStats> lockStats() {
+        return Collections.unmodifiableMap(lockStats);
+    }
+
+    /** 发现的不同死锁环的数量 */
+    public long deadlockCount() {
+        return deadlockCount.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (contentionMonitoringEnabledHere) {
+            threadMXBean.setThreadContentionMonitoringEnabled(false);
+        }
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            /* 不能让异常终止周期任务 */
+            e.printStackTrace();
+        }
+    }
+
+    void sample() {
+        long sample = ++samples;
+        detectDeadlock();
+        /* 两种模式都不获取调用栈（maxDepth = 0），阻塞、等待时间不需要调用栈 */
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), 0);
+        Set<Long> alive = new HashSet<>();
+        for (ThreadInfo info : infos) {
+            if (info == null) {
+                continue;
+            }
+            alive.add(info.getThreadId());
+            String lockName = info.getLockName();
+            if (lockName != null) {
+                LockStats stats = lockStats.computeIfAbsent(lockName, LockStats::new);
+                stats.lastSeenSample = sample;
+                if (info.getThreadState() == Thread.State.BLOCKED) {
+                    stats.blockedSamples.incrementAndGet();
+                } else {
+                    stats.waitingSamples.incrementAndGet();
+                }
+                if (detailed) {
+                    recordTimes(info, stats);
+                }
+            }
+        }
+        lastThreadTimes.keySet().retainAll(alive);
+        lockStats.values().removeIf(stats -> sample - stats.lastSeenSample >= EVICT_AFTER_SAMPLES);
+        reportedCycles.removeIf(cycle -> !alive.containsAll(cycle));
+    }
+
+    /**
+     * 把线程在两次采样之间增加的阻塞、等待时间计入它当前等待的锁（近似值）
+     */
+    private void recordTimes(ThreadInfo info, LockStats stats) {
+        long blocked = info.getBlockedTime();
+        long waited = info.getWaitedTime();
+        if (blocked < 0 || waited < 0) {
+            /* 线程竞争监控不可用 */
+            return;
+        }
+        long[] last = lastThreadTimes.get(info.getThreadId());
+        if (last != null) {
+            stats.blockedMillis.addAndGet(Math.max(0, blocked - last[0]));
+            stats.waitedMillis.addAndGet(Math.max(0, waited - last[1]));
+            last[0] = blocked;
+            last[1] = waited;
+        } else {
+            lastThreadTimes.put(info.getThreadId(), new long[] {blocked, waited});
+        }
+    }
+
+    private void detectDeadlock() {
+        long[] ids = threadMXBean.findDeadlockedThreads();
+        if (ids == null) {
+            return;
+        }
+        Set<Long> cycle = new HashSet<>();
+        for (long id : ids) {
+            cycle.add(id);
+        }
+        if (!reportedCycles.add(cycle)) {
+            return;
+        }
+        deadlockCount.incrementAndGet();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, true, true);
+        deadlockReporter.accept(describe(infos));
+    }
+
+    /**
+     * 格式：
+     * 发现死锁：
+     * "线程甲" 等待 basic.synchronize.A@1b6d3586，持有者 "线程乙"
+     * "线程乙" 等待 basic.synchronize.B@4554617c，持有者 "线程甲"
+     * 以及每个线程持有的锁和调用栈
+     */
+    static String describe(ThreadInfo[] infos) {
+        StringBuilder sb = new StringBuilder("发现死锁：\n");
+        for (ThreadInfo info : infos) {
+            if (info == null) {
+                continue;
+            }
+            sb.append('"').append(info.getThreadName()).append("\" 等待 ").append(info.getLockName())
+                    .append("，持有者 \"").append(info.getLockOwnerName()).append("\"\n");
+        }
+        for (ThreadInfo info : infos) {
+            if (info == null) {
+                continue;
+            }
+            sb.append("\n\"").append(info.getThreadName()).append("\" ").append(info.getThreadState()).append('\n');
+            List<String> held = new ArrayList<>();
+            for (MonitorInfo monitor : info.getLockedMonitors()) {
+                held.add(monitor.toString());
+            }
+            for (LockInfo lock : info.getLockedSynchronizers()) {
+                held.add(lock.toString());
+            }
+            sb.append("  持有的锁：").append(held.isEmpty() ? "无" : String.join(", ", held)).append('\n');
+            for (StackTraceElement element : info.getStackTrace()) {
+                sb.append("    at ").append(element).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "LockMonitor{detailed=" + detailed + ", deadlocks=" + deadlockCount() + ", hotspots="
+                + Arrays.toString(hotspots(5).toArray()) + "}";
+    }
+}
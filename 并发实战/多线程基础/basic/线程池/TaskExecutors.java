@@ -0,0 +1,202 @@
+package basic.线程池;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 线程池工厂：同样的 Runnable/Callable 任务既可以跑在平台线程池上，也可以跑在虚拟线程上
+ * <p>
+ * 虚拟线程（Java 21+）的创建和阻塞成本很低，适合大量“大部分时间都在 sleep / 等待 IO”的任务（如 BlockingQueueTest 中的生产者、消费者）。
+ * 在更早的 JDK 上，VIRTUAL 模式会退回到固定大小的平台线程池。这里通过反射调用 Executors.newVirtualThreadPerTaskExecutor()，
+ * 所以本类在 Java 8 上也可以编译。
+ * <p>
+ * 并发限制：
+ * <ul>
+ * <li> PLATFORM 模式：maxConcurrency 就是线程池的线程数
+ * <li> VIRTUAL 模式：每个任务一个虚拟线程，任务在虚拟线程中先获取 Semaphore 许可再执行，同一时刻最多执行 maxConcurrency 个任务
+ * （提交任务本身不会阻塞）；maxConcurrency <= 0 表示不限制
+ * <li> VIRTUAL 模式退回平台线程时：maxConcurrency 是线程池的线程数，<= 0 时使用 DEFAULT_FALLBACK_THREADS，
+ * 而不是“每个任务一个线程”的 newCachedThreadPool()（上万个任务会创建上万个平台线程）
+ * </ul>
+ */
+public final class TaskExecutors {
+
+    public enum Mode {
+        /** 平台线程（即操作系统线程）池 */
+        PLATFORM,
+        /** 虚拟线程，不支持时退回到 PLATFORM */
+        VIRTUAL
+    }
+
+    /** PLATFORM 模式下没有指定并发数时的默认线程数 */
+    private static final int DEFAULT_PLATFORM_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    /** VIRTUAL 模式退回平台线程、并且没有指定并发数时的线程数：任务大多在阻塞，所以比 DEFAULT_PLATFORM_THREADS 大，但仍然有上限 */
+    private static final int DEFAULT_FALLBACK_THREADS = Math.max(DEFAULT_PLATFORM_THREADS, 256);
+
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private TaskExecutors() {
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * @param maxConcurrency 同一时刻最多执行的任务数，<= 0 表示使用默认值（PLATFORM 模式、VIRTUAL 模式退回平台线程时）
+     *                       或不限制（VIRTUAL 模式）
+     */
+    public static ExecutorService newExecutor(Mode mode, int maxConcurrency) {
+        if (mode == Mode.VIRTUAL) {
+            if (virtualThreadsSupported()) {
+                ExecutorService executor = newVirtualThreadPerTaskExecutor();
+                return maxConcurrency > 0 ? new LimitedExecutorService(executor, maxConcurrency) : executor;
+            }
+            /* 平台线程的创建和栈内存成本都很高，退回时不能“每个任务一个线程”，多出来的任务在队列中等待 */
+            return Executors.newFixedThreadPool(maxConcurrency > 0 ? maxConcurrency : DEFAULT_FALLBACK_THREADS);
+        }
+        return Executors.newFixedThreadPool(maxConcurrency > 0 ? maxConcurrency : DEFAULT_PLATFORM_THREADS);
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            /* Java 21 之前没有虚拟线程 */
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * 用 Semaphore 限制同时执行的任务数，许可在执行任务的线程中获取，所以 execute() 不会阻塞提交者
+     * <p>
+     * 等待许可时被中断：
+     * <ul>
+     * <li> 由 shutdownNow() 引起：任务还没有开始执行，与 ThreadPoolExecutor 一样包含在 shutdownNow() 的返回值中
+     * <li> 其他原因：任务是 Future（submit() 提交的任务）时取消它，否则抛出 RejectedExecutionException
+     * </ul>
+     */
+    private static final class LimitedExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        /* 已经开始等待、还没有拿到许可的任务 */
+        private final Set<Permitted> waiting = ConcurrentHashMap.newKeySet();
+
+        LimitedExecutorService(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+            delegate.execute(new Permitted(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        /**
+         * 返回还没有开始执行的原始任务（包括正在等待许可的任务），与 ThreadPoolExecutor 一样，这些任务不会被取消
+         */
+        @Override
+        public List<Runnable> shutdownNow() {
+            delegate.shutdown();
+            List<Runnable> notStarted = new ArrayList<>();
+            for (Permitted task : waiting) {
+                if (task.claimed.compareAndSet(false, true)) {
+                    notStarted.add(task.command);
+                }
+            }
+            for (Runnable task : delegate.shutdownNow()) {
+                notStarted.add(task instanceof Permitted ? ((Permitted) task).command : task);
+            }
+            return notStarted;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        /**
+         * claimed：任务被执行线程（拿到许可之后）或 shutdownNow() 认领，只有先认领的一方处理这个任务
+         */
+        private final class Permitted implements Runnable {
+            private final Runnable command;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            Permitted(Runnable command) {
+                this.command = command;
+            }
+
+            @Override
+            public void run() {
+                waiting.add(this);
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    waiting.remove(this);
+                    Thread.currentThread().interrupt();
+                    if (claimed.compareAndSet(false, true)) {
+                        reject(e);
+                    }
+                    return;
+                }
+                waiting.remove(this);
+                if (!claimed.compareAndSet(false, true)) {
+                    /* 已经作为未执行的任务由 shutdownNow() 返回 */
+                    permits.release();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            }
+
+            private void reject(InterruptedException cause) {
+                if (command instanceof Future) {
+                    ((Future<?>) command).cancel(false);
+                    return;
+                }
+                throw new RejectedExecutionException("Interrupted while waiting for a permit: " + command, cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package basic.线程池;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+对比平台线程池和虚拟线程执行“阻塞型”任务的吞吐量。
+
+用法：java basic.线程池.TaskExecutorsBenchmark [任务数] [每个任务阻塞的毫秒数] [平台线程数]
+
+每个任务 sleep 一段时间（模拟等待 IO），然后返回一个值。
+平台线程池的吞吐量上限约为：线程数 * 1000 / 阻塞毫秒数；虚拟线程可以让 10k+ 个任务同时阻塞。
+Notice：在 Java 21 之前的 JDK 上，VIRTUAL 模式会退回到平台线程池，两组结果接近。
+ */
+public class TaskExecutorsBenchmark {
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int blockMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        System.out.println("虚拟线程可用：" + TaskExecutors.virtualThreadsSupported());
+        for (int round = 1; round <= 2; round++) {
+            System.out.println("---- 第 " + round + " 轮（" + tasks + " 个任务，每个阻塞 " + blockMillis + " ms）----");
+            run("PLATFORM(" + platformThreads + ")", TaskExecutors.newExecutor(TaskExecutors.Mode.PLATFORM, platformThreads),
+                    tasks, blockMillis);
+            run("VIRTUAL(不限制)", TaskExecutors.newExecutor(TaskExecutors.Mode.VIRTUAL, 0), tasks, blockMillis);
+            run("VIRTUAL(" + tasks / 2 + ")", TaskExecutors.newExecutor(TaskExecutors.Mode.VIRTUAL, tasks / 2),
+                    tasks, blockMillis);
+        }
+    }
+
+    private static void run(String name, ExecutorService pool, int tasks, int blockMillis)
+            throws InterruptedException, ExecutionException {
+        Callable<Integer> task = () -> {
+            Thread.sleep(blockMillis);
+            return 1;
+        };
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            futures.add(pool.submit(task));
+        }
+        int done = 0;
+        for (Future<Integer> future : futures) {
+            done += future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.printf("%-20s %,10.0f 任务/秒  耗时 %,8.0f ms  完成 %d%n",
+                name, done * 1e9 / elapsed, elapsed / 1e6, done);
+    }
+}
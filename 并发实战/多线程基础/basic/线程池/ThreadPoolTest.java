@@ -22,3 +22,20 @@ public class ThreadPoolTest {
         pool.shutdown();
     }
 }
+
+/**
+ * 同样的任务，通过 TaskExecutors 选择平台线程池或虚拟线程执行（Java 21 之前会退回到平台线程池）
+ */
+class VirtualThreadPoolTest {
+    public static void main(String[] args) {
+        ExecutorService pool = TaskExecutors.newExecutor(TaskExecutors.Mode.VIRTUAL, 6);
+        Runnable task = () -> {
+            for (int i = 0; i < 100; i++) {
+                System.out.println(Thread.currentThread() + " 的 i = " + i);
+            }
+        };
+        pool.submit(task);
+        pool.submit(task);
+        pool.shutdown();
+    }
+}